@@ -0,0 +1,87 @@
+package com.miniflow.avro;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Binary Avro encoding for the generated event classes (avro-maven-plugin, see pom.xml).
+ * <p>
+ * Datum writers and readers are built once per record class and shared; each thread reuses one
+ * output buffer and one {@link BinaryEncoder}, so encoding a record allocates little more than the
+ * returned byte array. Payloads are plain datums (no single-object header): the reader's schema is
+ * implied by the record class, as the outbox implies it by topic.
+ */
+public final class WorkflowEventCodec {
+
+    private static final ClassValue<SpecificDatumWriter<SpecificRecord>> WRITERS = new ClassValue<>() {
+        @Override
+        protected SpecificDatumWriter<SpecificRecord> computeValue(Class<?> type) {
+            return new SpecificDatumWriter<>(SpecificData.get().getSchema(type));
+        }
+    };
+    private static final ClassValue<SpecificDatumReader<SpecificRecord>> READERS = new ClassValue<>() {
+        @Override
+        protected SpecificDatumReader<SpecificRecord> computeValue(Class<?> type) {
+            return new SpecificDatumReader<>(SpecificData.get().getSchema(type));
+        }
+    };
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024; // don't pin one-off huge buffers to a thread
+
+    private WorkflowEventCodec() {
+    }
+
+    public static byte[] encode(SpecificRecord record) {
+        Buffers b = BUFFERS.get();
+        b.out.reset();
+        try {
+            b.encoder = EncoderFactory.get().binaryEncoder(b.out, b.encoder);
+            WRITERS.get(record.getClass()).write(record, b.encoder);
+            b.encoder.flush();
+            return b.out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode " + record.getSchema().getFullName(), e);
+        } finally {
+            if (b.out.capacity() > MAX_RETAINED_BUFFER) BUFFERS.remove();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends SpecificRecord> T decode(byte[] payload, Class<T> type) {
+        Buffers b = BUFFERS.get();
+        try {
+            b.decoder = DecoderFactory.get().binaryDecoder(payload, b.decoder);
+            return (T) READERS.get(type).read(null, b.decoder);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot decode " + type.getSimpleName() + " from "
+                    + payload.length + " bytes: " + Arrays.toString(Arrays.copyOf(payload, Math.min(16, payload.length))), e);
+        }
+    }
+
+    private static final class Buffers {
+        final ReusableOutput out = new ReusableOutput();
+        BinaryEncoder encoder;
+        BinaryDecoder decoder;
+    }
+
+    private static final class ReusableOutput extends ByteArrayOutputStream {
+        ReusableOutput() {
+            super(512);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -6,11 +6,16 @@ import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -42,6 +47,60 @@ public class KafkaAvroConsumerConfig {
         factory.setConsumerFactory(avroConsumerFactory());
         return factory;
     }
+
+    /**
+     * Batch container for WorkflowCommandListener: whole polls of specific records, offsets
+     * committed by the listener after its transactions, and a failed poll redelivered with backoff
+     * (the command log makes the redelivery idempotent).
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "miniflow.commands", name = "enabled", havingValue = "true")
+    public ConcurrentKafkaListenerContainerFactory<String, Object> commandListenerContainerFactory(
+            @Value("${miniflow.commands.max-poll-records:2000}") int maxPollRecords,
+            @Value("${miniflow.commands.concurrency:3}") int concurrency,
+            @Value("${miniflow.commands.retry-backoff-ms:1000}") long retryBackoffMs) {
+        return batchFactory(maxPollRecords, concurrency, retryBackoffMs);
+    }
+
+    /**
+     * Batch container for WorkflowEventProjector, configured like the command container: the
+     * projection is idempotent by event id, so a failed poll is simply redelivered.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "miniflow.projection", name = "enabled", havingValue = "true")
+    public ConcurrentKafkaListenerContainerFactory<String, Object> projectionListenerContainerFactory(
+            @Value("${miniflow.projection.max-poll-records:2000}") int maxPollRecords,
+            @Value("${miniflow.projection.concurrency:3}") int concurrency,
+            @Value("${miniflow.projection.retry-backoff-ms:1000}") long retryBackoffMs) {
+        return batchFactory(maxPollRecords, concurrency, retryBackoffMs);
+    }
+
+    private ConcurrentKafkaListenerContainerFactory<String, Object> batchFactory(int maxPollRecords, int concurrency,
+                                                                                 long retryBackoffMs) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, KafkaAvroDeserializer.class);
+        props.put(KafkaAvroDeserializerConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl);
+        props.put(KafkaAvroDeserializerConfig.SPECIFIC_AVRO_READER_CONFIG, true);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 64 * 1024);
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 50);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+
+        ExponentialBackOff backOff = new ExponentialBackOff(retryBackoffMs, 2.0);
+        backOff.setMaxInterval(60_000);
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props));
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(backOff)); // ExponentialBackOff retries indefinitely
+        return factory;
+    }
 }
 
 // Made with Bob
@@ -24,6 +24,16 @@ public class KafkaAvroProducerConfig {
     @Value("${spring.kafka.producer.properties.schema.registry.url}")
     private String schemaRegistryUrl;
 
+    // throughput knobs for the outbox relay, which sends in large batches
+    @Value("${miniflow.kafka.producer.linger-ms:20}")
+    private int lingerMs;
+    @Value("${miniflow.kafka.producer.batch-size:131072}")
+    private int batchSize;
+    @Value("${miniflow.kafka.producer.compression-type:lz4}")
+    private String compressionType;
+    @Value("${miniflow.kafka.producer.max-in-flight:5}")
+    private int maxInFlight;
+
     @Bean
     public ProducerFactory<String, Object> avroProducerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -42,6 +52,11 @@ public class KafkaAvroProducerConfig {
 
         // (optional) reliability
         props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true); // ordered retries with up to 5 in flight
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlight);
         return new DefaultKafkaProducerFactory<>(props);
     }
 
@@ -0,0 +1,125 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/AsyncJobExecutor.java
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import com.miniflow.persist.EnginePersistencePort;
+import com.miniflow.persist.VariableDelta;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs service tasks that {@link DbBackedEngine} parked as wf_job rows.
+ * <p>
+ * A single poller claims due jobs with {@code FOR UPDATE SKIP LOCKED} (so several nodes can poll
+ * the same table) and hands them to a bounded worker pool. Each worker runs the handler outside
+ * any transaction, then resumes the token in a short engine transaction. Failures are retried with
+ * exponential backoff up to {@code miniflow.jobs.max-attempts}, after which the job is left FAILED.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "miniflow.jobs", name = "enabled", havingValue = "true")
+public class AsyncJobExecutor {
+
+    private final DbBackedEngine engine;
+    private final EnginePersistencePort db;
+
+    @Value("${miniflow.jobs.pool-size:8}")
+    private int poolSize;
+    @Value("${miniflow.jobs.poll-interval-ms:500}")
+    private long pollIntervalMs;
+    @Value("${miniflow.jobs.lock-seconds:300}")
+    private int lockSeconds;
+    @Value("${miniflow.jobs.max-attempts:3}")
+    private int maxAttempts;
+    @Value("${miniflow.jobs.backoff-ms:1000}")
+    private long backoffMs;
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private ScheduledExecutorService poller;
+    private ExecutorService workers;
+
+    public AsyncJobExecutor(DbBackedEngine engine, EnginePersistencePort db) {
+        this.engine = engine;
+        this.db = db;
+    }
+
+    // start after ClasspathBpmnLoader has deployed the processes the jobs refer to
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        workers = Executors.newFixedThreadPool(poolSize, named("miniflow-job-"));
+        poller = Executors.newSingleThreadScheduledExecutor(named("miniflow-job-poller-"));
+        poller.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Async job executor started: owner={}, poolSize={}", owner, poolSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null) poller.shutdownNow();
+        if (workers != null) workers.shutdown();
+    }
+
+    void poll() {
+        try {
+            int free = poolSize - inFlight.get();
+            while (free > 0) {
+                List<EnginePersistencePort.JobView> jobs = db.claimJobs(owner, free, lockSeconds);
+                if (jobs.isEmpty()) return;
+                for (var job : jobs) {
+                    inFlight.incrementAndGet();
+                    workers.execute(() -> {
+                        try {
+                            run(job);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    });
+                }
+                free = poolSize - inFlight.get();
+            }
+        } catch (Exception e) {
+            log.error("Job poll failed", e);
+        }
+    }
+
+    void run(EnginePersistencePort.JobView job) {
+        try {
+            VariableDelta delta = engine.executeJob(job);
+            engine.resumeJob(job, delta);
+        } catch (Exception e) {
+            OffsetDateTime retryAt = job.attempts() < maxAttempts
+                    ? OffsetDateTime.now().plus(Duration.ofMillis(backoffMs << Math.min(job.attempts() - 1, 16)))
+                    : null;
+            log.warn("Job {} at {} failed (attempt {}/{}): {}", job.jobId(), job.nodeId(), job.attempts(), maxAttempts, e.toString());
+            try {
+                db.failJob(job.jobId(), job.owner(), String.valueOf(e), retryAt);
+            } catch (Exception ex) {
+                // lock expiry makes the job claimable again
+                log.error("Could not record failure of job {}", job.jobId(), ex);
+            }
+        }
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
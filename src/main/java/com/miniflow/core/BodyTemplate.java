@@ -0,0 +1,96 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/BodyTemplate.java
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON body template with {@code ${var}} placeholders, split into segments once and rendered
+ * per call without regex or re-parsing.
+ * <p>
+ * A placeholder written inside a JSON string ({@code "Dear ${name}"}) is replaced by the escaped
+ * string form of the variable; a bare placeholder ({@code {"age": ${age}}}) is replaced by the
+ * variable serialized as JSON, so numbers, booleans, maps and lists keep their type.
+ * Missing variables render as {@code null} (or an empty string inside quotes).
+ */
+public final class BodyTemplate {
+
+    private final String source;
+    private final String[] literals;   // literals[i] precedes placeholders[i]; one extra trailing literal
+    private final String[] keys;
+    private final boolean[] inString;
+
+    private BodyTemplate(String source, List<String> literals, List<String> keys, List<Boolean> inString) {
+        this.source = source;
+        this.literals = literals.toArray(String[]::new);
+        this.keys = keys.toArray(String[]::new);
+        this.inString = new boolean[inString.size()];
+        for (int i = 0; i < this.inString.length; i++) this.inString[i] = inString.get(i);
+    }
+
+    public static BodyTemplate compile(String template) {
+        String src = template == null ? "" : template;
+        List<String> literals = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Boolean> inString = new ArrayList<>();
+
+        boolean quoted = false; // inside a JSON string literal of the template
+        StringBuilder lit = new StringBuilder();
+        for (int i = 0; i < src.length(); i++) {
+            char c = src.charAt(i);
+            if (c == '$' && i + 1 < src.length() && src.charAt(i + 1) == '{') {
+                int end = src.indexOf('}', i + 2);
+                if (end > i + 2) {
+                    literals.add(lit.toString());
+                    lit.setLength(0);
+                    keys.add(src.substring(i + 2, end).trim());
+                    inString.add(quoted);
+                    i = end;
+                    continue;
+                }
+            }
+            if (c == '"' && (i == 0 || src.charAt(i - 1) != '\\')) quoted = !quoted;
+            lit.append(c);
+        }
+        literals.add(lit.toString());
+        return new BodyTemplate(src, literals, keys, inString);
+    }
+
+    public boolean hasPlaceholders() {
+        return keys.length > 0;
+    }
+
+    public String render(Map<String, Object> vars, ObjectMapper json) {
+        if (keys.length == 0) return source;
+        StringBuilder sb = new StringBuilder(source.length() + 16 * keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]);
+            Object v = vars == null ? null : vars.get(keys[i]);
+            try {
+                if (inString[i]) {
+                    if (v != null) {
+                        String s = json.writeValueAsString(String.valueOf(v));
+                        sb.append(s, 1, s.length() - 1); // strip the surrounding quotes
+                    }
+                } else {
+                    sb.append(json.writeValueAsString(v));
+                }
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot render variable '" + keys[i] + "' into HTTP body", e);
+            }
+        }
+        sb.append(literals[keys.length]);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,66 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/CommandRetry.java
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs an engine command in its own transaction and retries it when it loses an optimistic-lock
+ * race on the instance (or any other {@link ConcurrencyFailureException}). Attempts are bounded and
+ * separated by exponential backoff with full jitter, so branches that collided once spread out
+ * instead of colliding again. Inside a caller's transaction the command runs once: a rolled-back
+ * outer transaction cannot be retried from here.
+ */
+@Slf4j
+@Component
+public class CommandRetry {
+
+    private final TransactionTemplate tx;
+    private final int maxAttempts;
+    private final long backoffMs;
+
+    public CommandRetry(PlatformTransactionManager txManager,
+                        @Value("${miniflow.engine.retry.max-attempts:5}") int maxAttempts,
+                        @Value("${miniflow.engine.retry.backoff-ms:20}") long backoffMs) {
+        this.tx = new TransactionTemplate(txManager);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = Math.max(0, backoffMs);
+    }
+
+    public <T> T inTransaction(String command, Supplier<T> body) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return tx.execute(s -> body.get());
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return tx.execute(s -> body.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("{} still conflicting after {} attempts", command, attempt);
+                    throw e;
+                }
+                log.debug("{} conflicted (attempt {}/{}): {}", command, attempt, maxAttempts, e.getMessage());
+                sleep(ThreadLocalRandom.current().nextLong(backoffMs * (1L << Math.min(attempt - 1, 10)) + 1));
+            }
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", ie);
+        }
+    }
+}
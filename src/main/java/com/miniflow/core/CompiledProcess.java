@@ -0,0 +1,144 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/CompiledProcess.java   (deploy-time, index-based graph)
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import com.miniflow.core.EngineModel.*;
+
+import java.util.*;
+
+/**
+ * Index-based form of a {@link ProcessDefinition}, built once at deploy time and used by
+ * {@link DbBackedEngine} on the hot path. Nodes get dense int ordinals, sequence flows become
+ * arrays of target ordinals and conditions, and the props the engine reads on every step are
+ * resolved up front. {@link EngineModel} stays the authoring model.
+ */
+public final class CompiledProcess {
+
+    /** How a parallel gateway behaves, derived from its in/out degree. */
+    enum GatewayMode { FORK, JOIN, PASS_THROUGH }
+
+    public final String id;
+    public final ProcessDefinition definition;
+
+    final int start;
+    final String[] nodeIds;
+    final String[] names;
+    final NodeType[] types;
+    final int[][] outTargets;          // outTargets[n][i] = ordinal of the i-th outgoing target
+    final Condition[][] outConditions; // null entry = unconditional
+    final int[] incomingCount;
+    final GatewayMode[] gatewayModes;  // only set for PARALLEL_GATEWAY
+    final ServiceTask[] serviceTasks;  // only set for SERVICE_TASK
+    final UserTaskSpec[] userTasks;    // only set for USER_TASK
+    final int maxOutgoing;
+
+    private final Map<String, Integer> ordinals;
+
+    /** User task props pre-resolved from the BPMN extension attributes. Values may still be ${...} expressions. */
+    static final class UserTaskSpec {
+        final String formKey;
+        final String[] assigneeExprs;  // in priority order, nulls dropped
+        final String candidateUsers;
+        final String candidateGroups;
+        final String priority;
+        final String dueDate;
+
+        UserTaskSpec(Node n) {
+            String fk = prop(n, "form.external");
+            this.formKey = fk != null ? fk : prop(n, "zeebe.form.externalReference");
+            this.assigneeExprs = Arrays.stream(new String[]{
+                            prop(n, "zeebe.assignmentDefinition.assignee"),
+                            prop(n, "zeebe.assignee"),
+                            prop(n, "camunda.assignee"),
+                            prop(n, "assignee")})
+                    .filter(Objects::nonNull).toArray(String[]::new);
+            this.candidateUsers = prop(n, "zeebe.assignmentDefinition.candidateUsers");
+            this.candidateGroups = prop(n, "zeebe.assignmentDefinition.candidateGroups");
+            this.priority = prop(n, "camunda.priority");
+            this.dueDate = prop(n, "camunda.dueDate");
+        }
+    }
+
+    private CompiledProcess(ProcessDefinition def) {
+        this.id = def.id;
+        this.definition = def;
+
+        List<Node> list = new ArrayList<>(def.getNodes());
+        int size = list.size();
+        this.ordinals = new HashMap<>(size * 2);
+        this.nodeIds = new String[size];
+        this.names = new String[size];
+        this.types = new NodeType[size];
+        for (int i = 0; i < size; i++) {
+            Node n = list.get(i);
+            ordinals.put(n.id, i);
+            nodeIds[i] = n.id;
+            names[i] = n.name;
+            types[i] = n.type;
+        }
+
+        this.outTargets = new int[size][];
+        this.outConditions = new Condition[size][];
+        this.incomingCount = new int[size];
+        this.gatewayModes = new GatewayMode[size];
+        this.serviceTasks = new ServiceTask[size];
+        this.userTasks = new UserTaskSpec[size];
+        int maxOut = 0;
+        for (int i = 0; i < size; i++) {
+            Node n = list.get(i);
+            int outs = n.outgoing.size();
+            outTargets[i] = new int[outs];
+            outConditions[i] = new Condition[outs];
+            for (int k = 0; k < outs; k++) {
+                SequenceFlow f = n.outgoing.get(k);
+                Integer to = ordinals.get(f.to);
+                if (to == null) throw new IllegalStateException("Flow " + f.id + " targets unknown node " + f.to);
+                outTargets[i][k] = to;
+                outConditions[i][k] = f.condition;
+            }
+            incomingCount[i] = n.incoming.size();
+            maxOut = Math.max(maxOut, outs);
+
+            switch (n.type) {
+                case PARALLEL_GATEWAY -> {
+                    if (outs > 1 && n.incoming.size() <= 1) gatewayModes[i] = GatewayMode.FORK;
+                    else if (n.incoming.size() > 1 && outs == 1) gatewayModes[i] = GatewayMode.JOIN;
+                    else gatewayModes[i] = GatewayMode.PASS_THROUGH;
+                }
+                case SERVICE_TASK -> serviceTasks[i] = (ServiceTask) n;
+                case USER_TASK -> userTasks[i] = new UserTaskSpec(n);
+                default -> { }
+            }
+        }
+        this.maxOutgoing = maxOut;
+        this.start = ordinalOf(def.startId());
+    }
+
+    public static CompiledProcess compile(ProcessDefinition def) {
+        Objects.requireNonNull(def);
+        return new CompiledProcess(def);
+    }
+
+    /** Resolves a persisted node id (e.g. from a token row) to its ordinal. */
+    public int ordinalOf(String nodeId) {
+        Integer i = ordinals.get(nodeId);
+        if (i == null) throw new IllegalStateException("Unknown node " + nodeId + " in process " + id);
+        return i;
+    }
+
+    public int size() { return nodeIds.length; }
+    public String nodeId(int ordinal) { return nodeIds[ordinal]; }
+    public NodeType type(int ordinal) { return types[ordinal]; }
+    public String startId() { return nodeIds[start]; }
+
+    /** Ordinal of the only outgoing target; fails if the node does not have exactly one. */
+    int requireSingleOutgoing(int n) {
+        if (outTargets[n].length != 1) {
+            throw new IllegalStateException("Expected exactly 1 outgoing from " + nodeIds[n]);
+        }
+        return outTargets[n][0];
+    }
+
+    private static String prop(Node n, String k) { return n.props == null ? null : n.props.get(k); }
+}
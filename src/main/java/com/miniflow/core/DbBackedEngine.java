@@ -3,9 +3,10 @@
 // ---------------------------------------------------------------------------
 package com.miniflow.core;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniflow.core.EngineModel.*;
+import com.miniflow.persist.BufferedEnginePersistence;
 import com.miniflow.persist.EnginePersistencePort;
+import com.miniflow.persist.VariableDelta;
 import com.miniflow.persist.entity.WfInstance;
 import com.miniflow.persist.entity.WfProcess;
 import com.miniflow.persist.entity.WfTask;
@@ -14,17 +15,16 @@ import com.miniflow.persist.repo.WfProcessRepo;
 import com.miniflow.persist.repo.WfTaskRepo;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.UUID;
 
 
@@ -36,12 +36,27 @@ import static org.apache.commons.lang3.ObjectUtils.firstNonNull;
 @Service
 public class DbBackedEngine {
     @SafeVarargs static <T> T firstNonNull(T... v){ for (T x: v) if (x!=null) return x; return null; }
-    static String prop(Node n, String k) { return n.props == null ? null : n.props.get(k); }
     private final Map<String, ProcessDefinition> deployed = new ConcurrentHashMap<>();
+    private final Map<String, CompiledProcess> compiled = new ConcurrentHashMap<>();
     private final EnginePersistencePort db;
     private final WfInstanceRepo instanceRepo;
     private final WfTaskRepo taskRepo;
-    private final RestTemplate rest = new RestTemplate(); // for HTTP system tasks
+    private final HttpServiceTaskConnector http; // for HTTP system tasks
+    private final JavaDelegateRegistry delegates; // for java.class / java.bean system tasks
+    private final CommandRetry retry;             // optimistic-lock retries for commands on existing instances
+    private final InstanceMailbox mailbox;        // optional per-instance serialization of those commands
+
+    // buffer token/join/variable writes per command and flush them once (see BufferedEnginePersistence)
+    @Value("${miniflow.engine.write-behind:true}")
+    private boolean writeBehind = true;
+
+    // instances started per transaction by startAll
+    @Value("${miniflow.engine.bulk-chunk-size:500}")
+    private int bulkChunkSize = 500;
+
+    // park service tasks as wf_job rows for AsyncJobExecutor instead of running them inline
+    @Value("${miniflow.jobs.enabled:false}")
+    private boolean asyncServiceTasks = false;
 
 
   // fields
@@ -51,8 +66,13 @@ public class DbBackedEngine {
   public DbBackedEngine(EnginePersistencePort db,
                         WfInstanceRepo instanceRepo,
                         WfTaskRepo taskRepo,
-                        WfProcessRepo processRepo) {
+                        WfProcessRepo processRepo,
+                        HttpServiceTaskConnector http,
+                        JavaDelegateRegistry delegates,
+                        CommandRetry retry,
+                        InstanceMailbox mailbox) {
     this.db = db; this.instanceRepo = instanceRepo; this.taskRepo = taskRepo; this.processRepo = processRepo;
+    this.http = http; this.delegates = delegates; this.retry = retry; this.mailbox = mailbox;
   }
 
   // keep the old method for convenience
@@ -63,12 +83,24 @@ public class DbBackedEngine {
   // NEW: persist to wf_process
   public void deploy(ProcessDefinition def, String bpmnXml){
     Objects.requireNonNull(def);
+    // compile and resolve everything first, so a bad definition leaves no wf_process row behind
+    CompiledProcess cp = CompiledProcess.compile(def);
+    List<Map<String, String>> delegateTasks = new ArrayList<>();
+    for (ServiceTask st : cp.serviceTasks) {
+      if (st == null) continue;
+      if (HttpServiceTaskConnector.isHttp(st.props)) http.prepare(st.props);
+      else if (JavaDelegateRegistry.isDelegate(st.props)) delegateTasks.add(st.props);
+    }
+    var preparedDelegates = delegates.prepare(delegateTasks);
+
     WfProcess p = new WfProcess();
     p.processId = def.id;
     p.name = (def.name == null || def.name.isBlank()) ? def.id : def.name;
     p.bpmnXml = bpmnXml;
     p.deployedAt = OffsetDateTime.now();
     processRepo.save(p);           // <- ensures FK parent row exists
+    delegates.activate(def.id, preparedDelegates);
+    compiled.put(def.id, cp);
     deployed.put(def.id, def);     // still keep in-memory cache
 
 
@@ -137,9 +169,12 @@ public class DbBackedEngine {
     @Transactional
     public InstanceView start(String processId, String businessKey, Map<String, Object> vars) {
         ProcessDefinition def = requireProcess(processId);
+        CompiledProcess cp = requireCompiled(processId);
         UUID iid = db.createInstance(processId, businessKey, vars == null ? Map.of() : vars);
-        db.createToken(iid, def.startId());
-        runUntilWait(iid, def);
+        EnginePersistencePort uow = unitOfWork(iid);
+        uow.createToken(iid, cp.startId());
+        runUntilWait(iid, cp, uow);
+        flush(uow);
 
 
 
@@ -148,6 +183,82 @@ public class DbBackedEngine {
         return snapshot(iid);
     }
 
+    public record StartRequest(String businessKey, Map<String, Object> vars) {
+    }
+
+    public record StartResult(UUID instanceId, String businessKey, boolean completed) {
+    }
+
+    /**
+     * Thrown by {@link #startAll} when a chunk fails after earlier chunks have committed. Those
+     * instances exist; {@code started} lists them in request order (always a prefix of the
+     * requests), so a caller can retry from {@code started.size()} without starting duplicates.
+     */
+    public static final class BulkStartException extends RuntimeException {
+        public final List<StartResult> started;
+
+        BulkStartException(List<StartResult> started, RuntimeException cause) {
+            super("Started " + started.size() + " instances before failing: " + cause.getMessage(), cause);
+            this.started = List.copyOf(started);
+        }
+    }
+
+    /**
+     * Starts many instances of one process. Requests are consumed in chunks of
+     * {@code miniflow.engine.bulk-chunk-size}, one transaction per chunk: the instance and variable
+     * rows of a chunk are inserted as JDBC batches, each instance runs to its first wait state in a
+     * write-behind unit of work that needs no reads, and the tokens, tasks and inbox rows of the
+     * whole chunk are written together. Results are returned in request order.
+     * <p>
+     * Inside a caller's transaction the chunks commit (or roll back) with it. Otherwise a failing
+     * chunk leaves the earlier ones committed and is reported as a {@link BulkStartException}.
+     */
+    public List<StartResult> startAll(String processId, Stream<StartRequest> requests) {
+        CompiledProcess cp = requireCompiled(processId);
+        int chunkSize = Math.max(1, bulkChunkSize);
+        boolean chunksCommit = !TransactionSynchronizationManager.isActualTransactionActive();
+        List<StartResult> out = new ArrayList<>();
+        List<StartRequest> chunk = new ArrayList<>(chunkSize);
+        for (Iterator<StartRequest> it = requests.iterator(); it.hasNext(); ) {
+            chunk.add(it.next());
+            if (chunk.size() == chunkSize || !it.hasNext()) {
+                List<StartRequest> batch = List.copyOf(chunk);
+                chunk.clear();
+                try {
+                    out.addAll(retry.inTransaction("startAll " + processId, () -> startChunk(cp, batch)));
+                } catch (RuntimeException e) {
+                    if (!chunksCommit || out.isEmpty()) throw e;
+                    log.warn("startAll {} failed after {} committed instances: {}", processId, out.size(), e.toString());
+                    throw new BulkStartException(out, e);
+                }
+            }
+        }
+        log.debug("Started {} instances of {}", out.size(), processId);
+        return out;
+    }
+
+    private List<StartResult> startChunk(CompiledProcess cp, List<StartRequest> batch) {
+        List<EnginePersistencePort.NewInstance> rows = new ArrayList<>(batch.size());
+        for (StartRequest r : batch) {
+            rows.add(new EnginePersistencePort.NewInstance(UUID.randomUUID(), r.businessKey(),
+                    r.vars() == null ? Map.of() : r.vars()));
+        }
+        db.createInstances(cp.id, rows);
+
+        List<StartResult> out = new ArrayList<>(rows.size());
+        List<BufferedEnginePersistence> units = new ArrayList<>(rows.size());
+        for (EnginePersistencePort.NewInstance row : rows) {
+            UUID iid = row.instanceId();
+            BufferedEnginePersistence uow = BufferedEnginePersistence.forNewInstance(db, iid, row.vars());
+            uow.createToken(iid, cp.startId());
+            runUntilWait(iid, cp, uow);
+            units.add(uow);
+            out.add(new StartResult(iid, row.businessKey(), uow.isCompleted()));
+        }
+        BufferedEnginePersistence.flushAll(units); // one write of the chunk's tokens, tasks and inbox rows
+        return out;
+    }
+
     /**
      * Sets the due date for a task
      * @param taskId The ID of the task
@@ -155,42 +266,166 @@ public class DbBackedEngine {
      */
     @Transactional
     public void setTaskDueDate(UUID taskId, OffsetDateTime dueDateTime) {
-        WfTask task = taskRepo.findById(taskId).orElseThrow();
-        task.dueDateTime = dueDateTime;
-        taskRepo.save(task);
+        if (taskRepo.setDueDate(taskId, dueDateTime) == 0)
+            throw new NoSuchElementException("Task not found: " + taskId);
     }
 
-    @Transactional
+    /**
+     * Queued behind other commands for the same instance when the mailbox is enabled, and retried
+     * as a whole when a parallel branch of the same instance committed first.
+     */
     public InstanceView completeUserTask(UUID taskId, Map<String, Object> updates) {
+        UUID iid = taskRepo.findById(taskId).orElseThrow().instanceId;
+        return mailbox.call(iid, () ->
+                retry.inTransaction("completeUserTask " + taskId, () -> doCompleteUserTask(taskId, updates)));
+    }
+
+    private InstanceView doCompleteUserTask(UUID taskId, Map<String, Object> updates) {
         WfTask t = taskRepo.findById(taskId).orElseThrow();
+        if (!"OPEN".equals(t.state)) {
+            throw new IllegalStateException("Task is not open: " + taskId + " (" + t.state + ")");
+        }
+        UUID iid = t.instanceId;
+        EnginePersistencePort uow = unitOfWork(iid);
+        CompiledProcess cp = requireCompiled(instanceRepo.findById(iid).orElseThrow().processId);
+        applyCompletion(uow, cp, t, updates);
+        runUntilWait(iid, cp, uow);
+        flush(uow);
+        log.debug("\n{}", FlowLogger.logTask(t));
+        return snapshot(iid);
+    }
+
+    /** Applies the updates, completes the task and puts tokens on the matching outgoing flows. */
+    private void applyCompletion(EnginePersistencePort uow, CompiledProcess cp, WfTask t, Map<String, Object> updates) {
         UUID iid = t.instanceId;
         if (updates != null && !updates.isEmpty()) {
-            db.updateVariables(iid, cur -> {
+            uow.updateVariables(iid, cur -> {
                 if (cur == null) {
                     cur = new HashMap<>();
-                
-                }cur.putAll(updates);
+                }
+                cur.putAll(updates);
                 return cur;
             });
-        
-        }ProcessDefinition def = requireProcess(instanceRepo.findById(iid).orElseThrow().processId);
-        Node userNode = def.getNode(t.nodeId);
+        }
+        int userNode = cp.ordinalOf(t.nodeId);
+        Map<String, Object> vars = uow.variables(iid);
+        int[] outs = new int[cp.maxOutgoing];
+        int matched = matchingOutgoings(vars, cp, userNode, outs);
 
+        uow.completeUserTask(t.id);
 
-      Map<String,Object> vars = loadVars(iid);
-      List<SequenceFlow> outs = matchingOutgoings(vars, userNode);
+        // more than one match is an implicit AND-fork
+        for (int i = 0; i < matched; i++) uow.createToken(iid, cp.nodeIds[outs[i]]);
+    }
 
-      db.completeUserTask(taskId);
+    public record TaskCompletion(UUID taskId, Map<String, Object> updates) {
+    }
 
-      if (outs.size() == 1) {
-        db.createToken(iid, outs.get(0).to);
-      } else {
-        // implicit AND-fork
-        for (SequenceFlow f : outs) db.createToken(iid, f.to);
-      }
-      runUntilWait(iid, def);
-        log.debug("\n{}", FlowLogger.logTask(t));
-        return snapshot(iid);
+    /** status is COMPLETED, NOT_FOUND, NOT_OPEN or FAILED (with error set). */
+    public record TaskCompletionResult(UUID taskId, UUID instanceId, String status,
+                                       boolean instanceCompleted, String error) {
+    }
+
+    /**
+     * Completes many tasks in one transaction. Tasks, their instances and the instances' active
+     * tokens are loaded with three set-based queries. Completions are grouped by instance, and each
+     * group is applied in one write-behind unit of work, so an instance runs to its next wait state
+     * once per batch, not once per task.
+     * <p>
+     * If a group fails, the transaction is rolled back and the batch is re-run without that group.
+     * Its tasks are reported as FAILED and nothing of that instance is written. Inside a caller's
+     * transaction the rollback is the caller's: the group's exception is rethrown as is, and the
+     * caller decides what to re-run (WorkflowCommandProcessor goes command by command).
+     */
+    public List<TaskCompletionResult> completeUserTasks(List<TaskCompletion> completions) {
+        boolean joined = TransactionSynchronizationManager.isActualTransactionActive();
+        Map<UUID, TaskCompletionResult> failed = new HashMap<>();
+        while (true) {
+            try {
+                return retry.inTransaction("completeUserTasks(" + completions.size() + ")",
+                        () -> completeBatch(completions, failed));
+            } catch (GroupFailure f) {
+                // the joined transaction is rollback-only now; a re-run in it could never commit
+                if (joined) throw f.failure;
+                log.warn("Batch completion failed for instance {}: {}", f.instanceId, f.getCause().toString());
+                for (WfTask t : f.tasks) {
+                    failed.put(t.id, new TaskCompletionResult(t.id, t.instanceId, "FAILED", false,
+                            String.valueOf(f.getCause().getMessage())));
+                }
+            }
+        }
+    }
+
+    private List<TaskCompletionResult> completeBatch(List<TaskCompletion> completions,
+                                                     Map<UUID, TaskCompletionResult> failed) {
+        Map<UUID, WfTask> tasks = new HashMap<>();
+        List<UUID> ids = new ArrayList<>(completions.size());
+        for (TaskCompletion c : completions) if (!failed.containsKey(c.taskId())) ids.add(c.taskId());
+        for (WfTask t : taskRepo.findAllById(ids)) tasks.put(t.id, t);
+
+        Map<UUID, TaskCompletionResult> results = new HashMap<>(failed);
+        Map<UUID, List<TaskCompletion>> byInstance = new LinkedHashMap<>();
+        for (TaskCompletion c : completions) {
+            if (results.containsKey(c.taskId())) continue; // failed earlier or listed twice
+            WfTask t = tasks.get(c.taskId());
+            if (t == null) {
+                results.put(c.taskId(), new TaskCompletionResult(c.taskId(), null, "NOT_FOUND", false, null));
+            } else if (!"OPEN".equals(t.state)) {
+                results.put(c.taskId(), new TaskCompletionResult(t.id, t.instanceId, "NOT_OPEN", false, null));
+            } else {
+                byInstance.computeIfAbsent(t.instanceId, k -> new ArrayList<>()).add(c);
+                results.put(c.taskId(), null); // placeholder, so a duplicate id is completed once
+            }
+        }
+
+        // loaded into the persistence context: version and variable reads below need no queries
+        Map<UUID, WfInstance> instances = new HashMap<>();
+        for (WfInstance e : instanceRepo.findAllById(byInstance.keySet())) instances.put(e.id, e);
+        Map<UUID, List<EnginePersistencePort.TokenView>> tokens = db.activeTokens(byInstance.keySet());
+
+        for (var group : byInstance.entrySet()) {
+            UUID iid = group.getKey();
+            List<WfTask> groupTasks = group.getValue().stream().map(c -> tasks.get(c.taskId())).toList();
+            try {
+                CompiledProcess cp = requireCompiled(instances.get(iid).processId);
+                BufferedEnginePersistence uow = new BufferedEnginePersistence(db, iid);
+                uow.preloadTokens(tokens.getOrDefault(iid, List.of()));
+                for (TaskCompletion c : group.getValue()) {
+                    applyCompletion(uow, cp, tasks.get(c.taskId()), c.updates());
+                }
+                runUntilWait(iid, cp, uow);
+                boolean instanceCompleted = uow.isCompleted();
+                uow.flush();
+                for (WfTask t : groupTasks) {
+                    results.put(t.id, new TaskCompletionResult(t.id, iid, "COMPLETED", instanceCompleted, null));
+                }
+            } catch (ConcurrencyFailureException e) {
+                throw e; // the whole batch is retried
+            } catch (RuntimeException e) {
+                throw new GroupFailure(iid, groupTasks, e);
+            }
+        }
+
+        List<TaskCompletionResult> out = new ArrayList<>(completions.size());
+        Set<UUID> reported = new HashSet<>();
+        for (TaskCompletion c : completions) {
+            if (reported.add(c.taskId())) out.add(results.get(c.taskId()));
+        }
+        return out;
+    }
+
+    /** Rolls back a batch so it can be re-run without the instance that failed. */
+    private static final class GroupFailure extends RuntimeException {
+        final UUID instanceId;
+        final List<WfTask> tasks;
+        final RuntimeException failure;
+
+        GroupFailure(UUID instanceId, List<WfTask> tasks, RuntimeException cause) {
+            super(cause);
+            this.instanceId = instanceId;
+            this.tasks = tasks;
+            this.failure = cause;
+        }
     }
 
     public Optional<InstanceView> instance(UUID iid) {
@@ -199,7 +434,24 @@ public class DbBackedEngine {
 
     @Transactional
     protected void runUntilWait(UUID iid, ProcessDefinition def) {
-        Map<String, Object> vars = new HashMap<>(loadVars(iid));
+        EnginePersistencePort uow = unitOfWork(iid);
+        runUntilWait(iid, requireCompiled(def.id), uow);
+        flush(uow);
+    }
+
+    /** Per-command persistence: a write-behind buffer when enabled, otherwise the port itself. */
+    private EnginePersistencePort unitOfWork(UUID iid) {
+        return writeBehind ? new BufferedEnginePersistence(db, iid) : db;
+    }
+
+    private static void flush(EnginePersistencePort uow) {
+        if (uow instanceof BufferedEnginePersistence b) {
+            b.flush();
+        }
+    }
+
+    private void runUntilWait(UUID iid, CompiledProcess cp, EnginePersistencePort db) {
+        Map<String, Object> vars = new HashMap<>(db.variables(iid));
         while (true) {
             List<EnginePersistencePort.TokenView> tokens = db.activeTokens(iid);
             if (tokens.isEmpty()) {
@@ -207,25 +459,20 @@ public class DbBackedEngine {
             
             }boolean progressed = false;
             for (var tv : tokens) {
-                Node node = def.getNode(tv.nodeId());
-                switch (node.type) {
+                int n = cp.ordinalOf(tv.nodeId());
+                switch (cp.types[n]) {
                     case START -> {
-                        SequenceFlow out = requireSingleOutgoing(node);
-                        db.moveToken(tv.tokenId(), out.to);
+                        db.moveToken(tv.tokenId(), cp.nodeIds[cp.requireSingleOutgoing(n)]);
                         progressed = true;
                     }
                     case SERVICE_TASK -> {
-                        ServiceTask st = (ServiceTask) node; // 1) Java handler by type
-                        ServiceTaskHandler h = registry.get(st.taskType);
-                        if (h != null) {
-                            try {
-                                h.execute(new ExecutionContext(iid, vars, st.props));
-                            } catch (Exception e) {
-                                throw new RuntimeException(e);
-                            }
-                        } else { // 2) Built-in HTTP or Java class via props
-                            executeBuiltIn(st.props, new ExecutionContext(iid, vars, st.props));
+                        if (asyncServiceTasks) {
+                            // wait state: the job executor runs the task outside this transaction and resumes
+                            db.createJob(iid, tv.tokenId(), cp.nodeIds[n]);
+                            db.consumeToken(tv.tokenId());
+                            continue;
                         }
+                        executeServiceTask(iid, cp.id, cp.serviceTasks[n], vars);
                         db.updateVariables(iid, cur -> {
                             if (cur == null) {
                                 cur = new HashMap<>();
@@ -233,69 +480,60 @@ public class DbBackedEngine {
                             }cur.putAll(vars);
                             return cur;
                         });
-                        SequenceFlow out = chooseOutgoing(vars, node);
-                        db.moveToken(tv.tokenId(), out.to);
+                        db.moveToken(tv.tokenId(), cp.nodeIds[chooseOutgoing(vars, cp, n)]);
                         progressed = true;
 
                     }
                     case USER_TASK -> {
+                        CompiledProcess.UserTaskSpec ut = cp.userTasks[n];
 
-                        String formKey = null;
-                        if (node.props != null) {
-                            formKey = node.props.getOrDefault("form.external", null);
-                            if (formKey == null) formKey = node.props.get("zeebe.form.externalReference");
+                        // Assignment: first prop that resolves, allow expressions like ${doctorUser}
+                        String assignee = null;
+                        for (String raw : ut.assigneeExprs) {
+                            assignee = resolveString(raw, vars);
+                            if (assignee != null) break;
                         }
-
-                        // Assignment: read from props, allow expressions like ${doctorUser}
-                        //String assignee = resolveString(node.props.get("camunda.assignee"), vars);
-                        String assignee = firstNonNull(
-                                resolveString(prop(node, "zeebe.assignmentDefinition.assignee"), vars),
-                                resolveString(prop(node, "zeebe.assignee"), vars),                  // just in case you flatten differently
-                                resolveString(prop(node, "camunda.assignee"), vars),
-                                resolveString(prop(node, "assignee"), vars)
-                        );
 //  <zeebe:assignmentDefinition assignee="pharmacy" candidateGroups="Nurses,Cardiology,Lab" />
-                        List<String> candUsers  = splitCsv(resolveString(node.props.get("zeebe:assignmentDefinition.candidateUsers="),  vars));
-                        List<String> candGroups = splitCsv(resolveString(node.props.get("zeebe.assignmentDefinition.candidateGroups"), vars));
+                        List<String> candUsers  = splitCsv(resolveString(ut.candidateUsers, vars));
+                        List<String> candGroups = splitCsv(resolveString(ut.candidateGroups, vars));
 
                         // optional priority/due date
-                        Integer priority = tryInt(resolveString(node.props.get("camunda.priority"), vars));
-                        OffsetDateTime due = tryDate(resolveString(node.props.get("camunda.dueDate"), vars));
+                        Integer priority = tryInt(resolveString(ut.priority, vars));
+                        OffsetDateTime due = tryDate(resolveString(ut.dueDate, vars));
 
-                        db.createUserTask(iid, tv.tokenId(), node.id, node.name, formKey,
+                        db.createUserTask(iid, tv.tokenId(), cp.nodeIds[n], cp.names[n], ut.formKey,
                                 assignee, candUsers, candGroups, priority, due);
 
                         db.consumeToken(tv.tokenId());
                     }
 
                     case EXCLUSIVE_GATEWAY -> {
-                        SequenceFlow out = chooseOutgoing(vars, node);
-                        db.moveToken(tv.tokenId(), out.to);
+                        db.moveToken(tv.tokenId(), cp.nodeIds[chooseOutgoing(vars, cp, n)]);
                         progressed = true;
                     }
                     case PARALLEL_GATEWAY -> {
-                        boolean fork = node.outgoing.size() > 1 && node.incoming.size() <= 1;
-                        boolean join = node.incoming.size() > 1 && node.outgoing.size() == 1;
-                        if (fork) {
-                            db.consumeToken(tv.tokenId());
-                            for (SequenceFlow f : node.outgoing) {
-                                db.createToken(iid, f.to);
-                            
-                            }progressed = true;
-                        } else if (join) {
-                            int arrived = db.incrementJoin(iid, node.id, node.incoming.size());
-                            if (arrived >= node.incoming.size()) {
-                                db.resetJoin(iid, node.id);
-                                SequenceFlow out = requireSingleOutgoing(node);
-                                db.moveToken(tv.tokenId(), out.to);
-                                progressed = true;
-                            } else {
+                        switch (cp.gatewayModes[n]) {
+                            case FORK -> {
                                 db.consumeToken(tv.tokenId());
+                                for (int to : cp.outTargets[n]) {
+                                    db.createToken(iid, cp.nodeIds[to]);
+                                }
+                                progressed = true;
+                            }
+                            case JOIN -> {
+                                int expected = cp.incomingCount[n];
+                                int arrived = db.incrementJoin(iid, cp.nodeIds[n], expected);
+                                if (arrived >= expected) { // the counter has already started its next round
+                                    db.moveToken(tv.tokenId(), cp.nodeIds[cp.requireSingleOutgoing(n)]);
+                                    progressed = true;
+                                } else {
+                                    db.consumeToken(tv.tokenId());
+                                }
+                            }
+                            case PASS_THROUGH -> {
+                                db.moveToken(tv.tokenId(), cp.nodeIds[chooseOutgoing(vars, cp, n)]);
+                                progressed = true;
                             }
-                        } else {
-                            SequenceFlow out = chooseOutgoing(vars, node);
-                            db.moveToken(tv.tokenId(), out.to);
-                            progressed = true;
                         }
                     }
                     case END -> {
@@ -308,51 +546,83 @@ public class DbBackedEngine {
                 break;
         
             }}
-        boolean finished = db.activeTokens(iid).isEmpty() && !db.hasOpenTasks(iid);
+        boolean finished = db.activeTokens(iid).isEmpty() && !db.hasOpenTasks(iid) && !db.hasOpenJobs(iid);
         if (finished) {
             db.markInstanceCompleted(iid);
     
         }}
 
-    private void executeBuiltIn(Map<String, String> props, ExecutionContext ctx) {
-        String type = props.getOrDefault("type", "");
-        if ("http".equalsIgnoreCase(type) || props.containsKey("http.url")) {
-            callHttp(props, ctx);
-        } else if (props.containsKey("java.class")) {
-            callJava(props.get("java.class"), ctx);
-        } // else: no-op
+    private void executeServiceTask(UUID iid, String processId, ServiceTask st, Map<String, Object> vars) {
+        ServiceTaskHandler h = registry.get(st.taskType); // 1) Java handler by type
+        if (h != null) {
+            try {
+                h.execute(new ExecutionContext(iid, vars, st.props));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        } else { // 2) Built-in HTTP or Java class via props
+            executeBuiltIn(processId, st.props, new ExecutionContext(iid, vars, st.props));
+        }
     }
 
-    private void callHttp(Map<String, String> props, ExecutionContext ctx) {
-        String url = props.getOrDefault("http.url", "");
-        if (url.isBlank()) {
-            return;
-        
-        }String method = props.getOrDefault("http.method", "POST");
-        String bodyTpl = props.getOrDefault("http.body", "{}");
-        try {
-            Object body = new ObjectMapper().readValue(bodyTpl, Map.class); // can include placeholders if you extend
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Object> entity = new HttpEntity<>(body, headers);
-            rest.exchange(url, HttpMethod.valueOf(method.toUpperCase()), entity, String.class);
-        } catch (Exception e) {
-            throw new RuntimeException("HTTP serviceTask failed: " + e.getMessage(), e);
+    /**
+     * Runs the service task behind a claimed job. Not transactional: the handler may do slow I/O,
+     * so no connection or row lock is held while it runs.
+     * @param job The claimed job
+     * @return The variables the handler changed, added or removed
+     */
+    public VariableDelta executeJob(EnginePersistencePort.JobView job) {
+        UUID iid = job.instanceId();
+        CompiledProcess cp = requireCompiled(instanceRepo.findById(iid).orElseThrow().processId);
+        ServiceTask st = cp.serviceTasks[cp.ordinalOf(job.nodeId())];
+        if (st == null) {
+            throw new IllegalStateException("Job " + job.jobId() + " does not point at a service task: " + job.nodeId());
         }
+        Map<String, Object> vars = db.variables(iid);
+        Map<String, Object> before = VariableDelta.snapshot(vars); // handlers may mutate nested values in place
+        executeServiceTask(iid, cp.id, st, vars);
+        return VariableDelta.between(before, vars);
     }
 
-    private void callJava(String className, ExecutionContext ctx) {
-        try {
-            Class<?> cl = Class.forName(className);
-            Object o = cl.getDeclaredConstructor().newInstance();
-            if (o instanceof JavaDelegate jd) {
-                jd.execute(ctx);
-            } else {
-                throw new IllegalStateException("Class does not implement JavaDelegate: " + className);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Java class serviceTask failed: " + e.getMessage(), e);
+    /**
+     * Applies a finished job's variable changes, moves past the service task and runs to the next wait state.
+     * @param job The job passed to {@link #executeJob}
+     * @param delta The variable changes it returned
+     */
+    public InstanceView resumeJob(EnginePersistencePort.JobView job, VariableDelta delta) {
+        return mailbox.call(job.instanceId(), () ->
+                retry.inTransaction("resumeJob " + job.jobId(), () -> doResumeJob(job, delta)));
+    }
+
+    private InstanceView doResumeJob(EnginePersistencePort.JobView job, VariableDelta delta) {
+        UUID iid = job.instanceId();
+        CompiledProcess cp = requireCompiled(instanceRepo.findById(iid).orElseThrow().processId);
+        int n = cp.ordinalOf(job.nodeId());
+        EnginePersistencePort uow = unitOfWork(iid);
+        uow.completeJob(job.jobId(), job.owner());
+        if (delta != null && !delta.isEmpty()) {
+            uow.updateVariables(iid, cur -> {
+                cur.keySet().removeAll(delta.removed());
+                cur.putAll(delta.changed());
+                return cur;
+            });
         }
+        uow.createToken(iid, cp.nodeIds[chooseOutgoing(uow.variables(iid), cp, n)]);
+        runUntilWait(iid, cp, uow);
+        flush(uow);
+        return snapshot(iid);
+    }
+
+    private void executeBuiltIn(String processId, Map<String, String> props, ExecutionContext ctx) {
+        if (HttpServiceTaskConnector.isHttp(props)) {
+            http.execute(props, ctx.vars());
+        } else if (JavaDelegateRegistry.isDelegate(props)) {
+            try {
+                delegates.delegate(processId, props).execute(ctx);
+            } catch (Exception e) {
+                throw new RuntimeException("Java class serviceTask failed: " + e.getMessage(), e);
+            }
+        } // else: no-op
     }
 
     public interface JavaDelegate {
@@ -368,6 +638,14 @@ public class DbBackedEngine {
         }return d;
     }
 
+    private CompiledProcess requireCompiled(String processId) {
+        CompiledProcess c = compiled.get(processId);
+        if (c == null) {
+            throw new IllegalArgumentException("Process not deployed: " + processId);
+        }
+        return c;
+    }
+
   // src/main/java/com/miniflow/core/DbBackedEngine.java
   private Map<String,Object> loadVars(UUID iid){
     var e = instanceRepo.findById(iid).orElseThrow();
@@ -375,23 +653,19 @@ public class DbBackedEngine {
   }
 
 
-  private static EngineModel.SequenceFlow requireSingleOutgoing(Node node) {
-        if (node.outgoing.size() != 1) {
-            throw new IllegalStateException("Expected exactly 1 outgoing from " + node.id);
-        
-        }return node.outgoing.get(0);
-    }
-
-    private static EngineModel.SequenceFlow chooseOutgoing(Map<String, Object> vars, Node node) {
-        if (node.outgoing.isEmpty()) {
-            throw new IllegalStateException("No outgoing from " + node.id);
+    /** Ordinal of the first outgoing target whose condition holds. */
+    private static int chooseOutgoing(Map<String, Object> vars, CompiledProcess cp, int n) {
+        int[] targets = cp.outTargets[n];
+        if (targets.length == 0) {
+            throw new IllegalStateException("No outgoing from " + cp.nodeIds[n]);
         
-        }for (EngineModel.SequenceFlow f : node.outgoing) {
-            if (f.condition == null || f.condition.eval(vars)) {
-                return f;
+        }Condition[] conds = cp.outConditions[n];
+        for (int i = 0; i < targets.length; i++) {
+            if (conds[i] == null || conds[i].eval(vars)) {
+                return targets[i];
         
             }}
-        throw new IllegalStateException("No matching condition from " + node.id);
+        throw new IllegalStateException("No matching condition from " + cp.nodeIds[n]);
     }
 
     public static final class ExecutionContext {
@@ -445,14 +719,12 @@ public class DbBackedEngine {
 
     }
 
-    private static boolean passesFailOpen(EngineModel.SequenceFlow f, Map<String,Object> vars) {
+    private static boolean passesFailOpen(Condition c, Map<String,Object> vars) {
         // treat "no real condition" as true
-        if (f.condition == null) return true;
-        // if you have a raw expression field, also treat blank as no condition:
-        // if (f.conditionExpr != null && f.conditionExpr.isBlank()) return true;
+        if (c == null) return true;
 
         try {
-            Object res = f.condition.eval(safeVars(vars));
+            Object res = c.eval(safeVars(vars));
             return truthy(res);
         } catch (Exception e) {
             // key point: if the engine can't evaluate (missing var, null pointer, etc.),
@@ -462,18 +734,21 @@ public class DbBackedEngine {
     }
 
     // DbBackedEngine.java
-  private List<EngineModel.SequenceFlow> matchingOutgoings(Map<String,Object> vars, EngineModel.Node node) {
-    List<EngineModel.SequenceFlow> outs = new ArrayList<>();
-      for (EngineModel.SequenceFlow f : node.outgoing) {
-          if (passesFailOpen(f, vars)) {
-              outs.add(f);
+  /** Writes the ordinals of all passing outgoing targets into {@code out}; returns how many. */
+  private static int matchingOutgoings(Map<String,Object> vars, CompiledProcess cp, int n, int[] out) {
+      int[] targets = cp.outTargets[n];
+      Condition[] conds = cp.outConditions[n];
+      int count = 0;
+      for (int i = 0; i < targets.length; i++) {
+          if (passesFailOpen(conds[i], vars)) {
+              out[count++] = targets[i];
           }
       }
 
 
 
-    if (outs.isEmpty()) throw new IllegalStateException("No matching condition from " + node.id);
-    return outs;
+    if (count == 0) throw new IllegalStateException("No matching condition from " + cp.nodeIds[n]);
+    return count;
   }
 
     private static List<String> splitCsv(String s) {
@@ -1,18 +1,97 @@
 package com.miniflow.core;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.context.expression.MapAccessor;
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.ConstructorResolver;
+import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.OperatorOverloader;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypeLocator;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 
 /**
- * Expression evaluator for BPMN conditions using Spring Expression Language (SpEL)
+ * Expression evaluator for BPMN conditions using Spring Expression Language (SpEL).
+ * <p>
+ * Expressions are parsed once and cached. Variables are read straight from the variables map
+ * (the root object) through a {@link MapAccessor}, so {@code status == 'APPROVED'} needs no
+ * rewriting, and SpEL compiles hot expressions to bytecode (falling back to interpretation
+ * when the variable types change). {@code #amount > 5} keeps working too: each call wraps the
+ * shared context in a {@link VariablesContext} that resolves {@code #name} from the same map.
  */
 public class Expr {
-    private static final ExpressionParser parser = new SpelExpressionParser();
+    private static final ExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, Expr.class.getClassLoader()));
+
+    /** Shared, read-only context; the variables map is passed per call as the root object. */
+    private static final StandardEvaluationContext CONTEXT = new StandardEvaluationContext();
+    static {
+        // map keys first, so a variable called "empty" or "size" is not read as a HashMap getter
+        CONTEXT.setPropertyAccessors(List.of(new MapAccessor(), new ReflectivePropertyAccessor()));
+    }
+
+    /** Upper bound for the ad-hoc cache used by {@link #eval(String, Map)}. */
+    private static final int MAX_CACHED = 10_000;
+    private static final Map<String, Expression> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Parses a condition once, for deploy-time compilation of {@code conditionExpression}s.
+     *
+     * @param expr The SpEL expression, optionally wrapped in #{...}, ${...} or ={...}
+     * @return The parsed expression, or null for a blank expression
+     * @throws IllegalArgumentException if the expression does not parse
+     */
+    public static Expression compile(String expr) {
+        if (expr == null || expr.isBlank()) {
+            return null;
+        }
+        Expression cached = CACHE.get(expr);
+        if (cached != null) {
+            return cached;
+        }
+        Expression parsed;
+        try {
+            parsed = parser.parseExpression(unwrap(expr.trim()));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid expression '" + expr + "': " + e.getMessage(), e);
+        }
+        if (CACHE.size() < MAX_CACHED) {
+            CACHE.putIfAbsent(expr, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Compiles a BPMN condition into a {@link EngineModel.Condition} backed by a cached expression.
+     *
+     * @param expr The condition text
+     * @return A condition using {@link #evalLogical(Expression, Map)} semantics
+     */
+    public static EngineModel.Condition condition(String expr) {
+        Expression compiled = compile(expr);
+        if (compiled == null) {
+            return vars -> true;
+        }
+        return new EngineModel.Condition() {
+            @Override public boolean eval(Map<String, Object> vars) { return evalLogical(compiled, vars); }
+            @Override public String toString() { return expr.trim(); }
+        };
+    }
 
     /**
      * Evaluates a Spring Expression Language (SpEL) expression with the given variables
@@ -22,45 +101,28 @@ public class Expr {
      * @return The result of the expression evaluation
      */
     public static Object eval(String expr, Map<String, Object> vars) {
-        if (expr == null || expr.isBlank()) {
+        try {
+            return eval(compile(expr), vars);
+        } catch (IllegalArgumentException e) {
+            // Return null for unparsable expressions
             return null;
         }
-        
-        // Handle SpEL expressions with #{...} or ${...} syntax
-        String actualExpr = expr;
-        if ((expr.startsWith("#{") && expr.endsWith("}")) ||
-            (expr.startsWith("${") && expr.endsWith("}"))||
-                (expr.startsWith("={") && expr.endsWith("}"))) {
+    }
 
-            actualExpr = expr.substring(2, expr.length() - 1);
-        }
-        
-        // For BPMN expressions, convert direct property access to map access
-        // Convert "status == 'APPROVED'" to "['status'] == 'APPROVED'"
-        if (vars != null) {
-            for (String key : vars.keySet()) {
-                // Replace standalone variable references that aren't already prefixed
-                actualExpr = actualExpr.replaceAll("\\b" + key + "\\b(?![\\w\\.])", "['"+key+"']");
-            }
-        }
-        
-        StandardEvaluationContext context = new StandardEvaluationContext();
-        
-        // Add variables to the context
-        if (vars != null) {
-            // Set the root object first
-            context.setRootObject(vars);
-            
-            // Then add variables as variables
-            for (Map.Entry<String, Object> entry : vars.entrySet()) {
-                context.setVariable(entry.getKey(), entry.getValue());
-            }
+    /**
+     * Evaluates an already parsed expression with the given variables
+     *
+     * @param expression The expression from {@link #compile(String)}
+     * @param vars The variables, exposed as the root object
+     * @return The result of the expression evaluation, or null on errors
+     */
+    public static Object eval(Expression expression, Map<String, Object> vars) {
+        if (expression == null) {
+            return null;
         }
-        
-        // Parse and evaluate the expression
         try {
-            Expression expression = parser.parseExpression(actualExpr);
-            return expression.getValue(context);
+            Map<String, Object> root = vars == null ? Map.of() : vars;
+            return expression.getValue(new VariablesContext(root), root);
         } catch (Exception e) {
             // Return null for any evaluation errors
             return null;
@@ -75,8 +137,21 @@ public class Expr {
      * @return The boolean result of the expression, or false if evaluation fails
      */
     public static boolean evalLogical(String expr, Map<String, Object> vars) {
-        Object result = eval(expr, vars);
-        
+        return truthy(eval(expr, vars));
+    }
+
+    /**
+     * Evaluates an already parsed logical expression and returns a boolean result
+     *
+     * @param expression The expression from {@link #compile(String)}
+     * @param vars The variables to use in the evaluation context
+     * @return The boolean result of the expression, or false if evaluation fails
+     */
+    public static boolean evalLogical(Expression expression, Map<String, Object> vars) {
+        return truthy(eval(expression, vars));
+    }
+
+    private static boolean truthy(Object result) {
         if (result instanceof Boolean) {
             return (Boolean) result;
         } else if (result instanceof String) {
@@ -101,6 +176,50 @@ public class Expr {
     }
 
 
+    /**
+     * Per-call view of {@link #CONTEXT}: everything is delegated to it, except that {@code #name}
+     * reads the process variable of that name. Variables assigned by the expression itself stay
+     * local to the call.
+     */
+    private static final class VariablesContext implements EvaluationContext {
+        private final Map<String, Object> vars;
+        private Map<String, Object> assigned;
+
+        VariablesContext(Map<String, Object> vars) {
+            this.vars = vars;
+        }
+
+        @Override public TypedValue getRootObject() { return new TypedValue(vars); }
+        @Override public List<PropertyAccessor> getPropertyAccessors() { return CONTEXT.getPropertyAccessors(); }
+        @Override public List<ConstructorResolver> getConstructorResolvers() { return CONTEXT.getConstructorResolvers(); }
+        @Override public List<MethodResolver> getMethodResolvers() { return CONTEXT.getMethodResolvers(); }
+        @Override public BeanResolver getBeanResolver() { return CONTEXT.getBeanResolver(); }
+        @Override public TypeLocator getTypeLocator() { return CONTEXT.getTypeLocator(); }
+        @Override public TypeConverter getTypeConverter() { return CONTEXT.getTypeConverter(); }
+        @Override public TypeComparator getTypeComparator() { return CONTEXT.getTypeComparator(); }
+        @Override public OperatorOverloader getOperatorOverloader() { return CONTEXT.getOperatorOverloader(); }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            if (assigned == null) assigned = new HashMap<>();
+            assigned.put(name, value);
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            if (assigned != null && assigned.containsKey(name)) return assigned.get(name);
+            return vars.get(name);
+        }
+    }
+
+    private static String unwrap(String expr) {
+        // Handle SpEL expressions with #{...}, ${...} or ={...} syntax
+        if ((expr.startsWith("#{") || expr.startsWith("${") || expr.startsWith("={")) && expr.endsWith("}")) {
+            return expr.substring(2, expr.length() - 1);
+        }
+        return expr;
+    }
+
     /**
      * Checks if a variable exists in the variables map
      * 
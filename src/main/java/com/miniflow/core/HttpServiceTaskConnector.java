@@ -0,0 +1,234 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/HttpServiceTaskConnector.java
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Built-in HTTP service task ("type=http" or an {@code http.url} prop).
+ * <p>
+ * One shared JDK {@link HttpClient} per connect timeout keeps connections pooled across instances.
+ * Supported props:
+ * <ul>
+ *   <li>{@code http.url}, {@code http.method} (default POST)</li>
+ *   <li>{@code http.body} – JSON template with {@code ${var}} placeholders, compiled once (see {@link BodyTemplate})</li>
+ *   <li>{@code http.header.<Name>} – extra request headers; names the JDK client manages itself
+ *       ({@code Host}, {@code Content-Length}, {@code Connection}, ...) are rejected at deploy</li>
+ *   <li>{@code http.connectTimeoutMs}, {@code http.readTimeoutMs} – per-endpoint timeouts</li>
+ *   <li>{@code http.response.var} – store the whole JSON response in this variable</li>
+ *   <li>{@code http.response.map.<var>} – store the value at a JSON pointer (e.g. {@code /data/id}) in {@code var}</li>
+ *   <li>{@code http.response.statusVar} – store the HTTP status code</li>
+ * </ul>
+ * Non-2xx responses fail the task. The response body is parsed straight from the socket stream,
+ * and skipped entirely when no response mapping is configured. With only {@code http.response.map.*}
+ * configured it is walked token by token: subtrees no pointer leads into are skipped, and only the
+ * mapped values are bound to objects.
+ */
+@Slf4j
+@Component
+public class HttpServiceTaskConnector {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String MAP_PREFIX = "http.response.map.";
+    private static final String HEADER_PREFIX = "http.header.";
+
+    @Value("${miniflow.http.connect-timeout-ms:5000}")
+    private long defaultConnectTimeoutMs = 5000;
+    @Value("${miniflow.http.read-timeout-ms:30000}")
+    private long defaultReadTimeoutMs = 30000;
+
+    private final Map<Long, HttpClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, BodyTemplate> templates = new ConcurrentHashMap<>();
+
+    /** True for service tasks this connector runs. */
+    public static boolean isHttp(Map<String, String> props) {
+        return "http".equalsIgnoreCase(props.getOrDefault("type", "")) || props.containsKey("http.url");
+    }
+
+    /**
+     * Checks a task's headers and response pointers at deploy time, so a bad definition fails the
+     * deployment instead of every run of the task.
+     *
+     * @throws IllegalArgumentException for a header the JDK client refuses or a malformed pointer
+     */
+    public void prepare(Map<String, String> props) {
+        HttpRequest.Builder probe = HttpRequest.newBuilder();
+        props.forEach((k, v) -> {
+            if (!k.startsWith(HEADER_PREFIX)) return;
+            try {
+                probe.header(k.substring(HEADER_PREFIX.length()), v == null ? "" : v);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("HTTP service task cannot set " + k + ": " + e.getMessage(), e);
+            }
+        });
+        responseMappings(props).forEach((var, pointer) -> {
+            try {
+                JsonPointer.compile(pointer);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + MAP_PREFIX + var + " pointer '" + pointer + "'", e);
+            }
+        });
+    }
+
+    public void execute(Map<String, String> props, Map<String, Object> vars) {
+        String url = props.getOrDefault("http.url", "");
+        if (url.isBlank()) {
+            return;
+        }
+        String method = props.getOrDefault("http.method", "POST").toUpperCase();
+        BodyTemplate body = templates.computeIfAbsent(props.getOrDefault("http.body", "{}"), BodyTemplate::compile);
+
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(longProp(props, "http.readTimeoutMs", defaultReadTimeoutMs)))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json");
+        props.forEach((k, v) -> {
+            if (k.startsWith(HEADER_PREFIX)) req.header(k.substring(HEADER_PREFIX.length()), v);
+        });
+        if ("GET".equals(method) || ("DELETE".equals(method) && !props.containsKey("http.body"))) {
+            req.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            req.method(method, HttpRequest.BodyPublishers.ofString(body.render(vars, JSON)));
+        }
+
+        Map<String, String> mappings = responseMappings(props);
+        String wholeVar = props.get("http.response.var");
+        boolean readBody = wholeVar != null || !mappings.isEmpty();
+        HttpClient client = client(longProp(props, "http.connectTimeoutMs", defaultConnectTimeoutMs));
+        try {
+            HttpResponse<InputStream> res = client.send(req.build(),
+                    readBody ? HttpResponse.BodyHandlers.ofInputStream() : discardingAsStream());
+            int status = res.statusCode();
+            String statusVar = props.get("http.response.statusVar");
+            if (statusVar != null) vars.put(statusVar, status);
+            try (InputStream in = res.body()) {
+                if (status < 200 || status >= 300) {
+                    throw new IllegalStateException(method + " " + url + " returned HTTP " + status);
+                }
+                if (readBody) {
+                    for (String var : mappings.keySet()) vars.put(var, null); // unless found below
+                    if (in != null) readResponse(in, wholeVar, mappings, vars);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("HTTP serviceTask failed: " + method + " " + url + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("HTTP serviceTask interrupted: " + method + " " + url, e);
+        }
+    }
+
+    private static void readResponse(InputStream in, String wholeVar, Map<String, String> mappings,
+                                     Map<String, Object> vars) throws IOException {
+        try (JsonParser p = JSON.createParser(in)) {
+            if (p.nextToken() == null) {
+                if (wholeVar != null) vars.put(wholeVar, null);
+                return;
+            }
+            if (wholeVar != null) {
+                // the whole body is wanted anyway; resolve the pointers against it
+                Object body = JSON.readValue(p, Object.class);
+                vars.put(wholeVar, body);
+                mappings.forEach((var, pointer) -> vars.put(var, at(body, JsonPointer.compile(pointer))));
+                return;
+            }
+            Set<String> prefixes = new HashSet<>();
+            for (String pointer : mappings.values()) {
+                for (JsonPointer ptr = JsonPointer.compile(pointer); ptr != null; ptr = ptr.head()) prefixes.add(ptr.toString());
+            }
+            visit(p, "", mappings, prefixes, vars);
+        }
+    }
+
+    /** Walks the value at the parser's current token, which sits at {@code path}. */
+    private static void visit(JsonParser p, String path, Map<String, String> mappings, Set<String> prefixes,
+                              Map<String, Object> vars) throws IOException {
+        if (mappings.containsValue(path)) {
+            Object value = JSON.readValue(p, Object.class);
+            mappings.forEach((var, pointer) -> {
+                if (pointer.equals(path)) vars.put(var, value);
+                else if (pointer.startsWith(path + "/")) vars.put(var, at(value, JsonPointer.compile(pointer.substring(path.length()))));
+            });
+            return;
+        }
+        if (!prefixes.contains(path)) {
+            p.skipChildren();
+            return;
+        }
+        if (p.currentToken() == JsonToken.START_OBJECT) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String segment = p.currentName().replace("~", "~0").replace("/", "~1");
+                p.nextToken();
+                visit(p, path + "/" + segment, mappings, prefixes, vars);
+            }
+        } else if (p.currentToken() == JsonToken.START_ARRAY) {
+            for (int i = 0; p.nextToken() != JsonToken.END_ARRAY; i++) {
+                visit(p, path + "/" + i, mappings, prefixes, vars);
+            }
+        }
+    }
+
+    private static Object at(Object node, JsonPointer ptr) {
+        for (JsonPointer p = ptr; !p.matches(); p = p.tail()) {
+            if (node instanceof Map<?, ?> m) {
+                node = m.get(p.getMatchingProperty());
+            } else if (node instanceof List<?> l) {
+                int i = p.getMatchingIndex();
+                node = i >= 0 && i < l.size() ? l.get(i) : null;
+            } else {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private HttpClient client(long connectTimeoutMs) {
+        return clients.computeIfAbsent(connectTimeoutMs, ms -> HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(ms))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    private static HttpResponse.BodyHandler<InputStream> discardingAsStream() {
+        return info -> HttpResponse.BodySubscribers.replacing(InputStream.nullInputStream());
+    }
+
+    private static Map<String, String> responseMappings(Map<String, String> props) {
+        Map<String, String> out = new LinkedHashMap<>();
+        props.forEach((k, v) -> {
+            if (k.startsWith(MAP_PREFIX) && v != null && !v.isBlank()) {
+                String pointer = v.trim();
+                out.put(k.substring(MAP_PREFIX.length()), pointer.startsWith("/") ? pointer : "/" + pointer.replace('.', '/'));
+            }
+        });
+        return out;
+    }
+
+    private static long longProp(Map<String, String> props, String key, long dflt) {
+        String v = props.get(key);
+        if (v == null || v.isBlank()) return dflt;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring non-numeric {}={}", key, v);
+            return dflt;
+        }
+    }
+}
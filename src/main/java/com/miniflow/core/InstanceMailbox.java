@@ -0,0 +1,79 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/InstanceMailbox.java
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Optional per-instance command serialization ({@code miniflow.engine.mailbox.enabled}).
+ * <p>
+ * Each instance id hashes to one of a fixed set of single-threaded lanes, so commands for the same
+ * instance run one after another on this node while other instances proceed in parallel. The caller
+ * blocks until its command has run. Commands already running on a lane, or inside a caller's
+ * transaction, run inline. Optimistic locking stays in place for commands arriving through
+ * other nodes.
+ */
+@Slf4j
+@Component
+public class InstanceMailbox {
+
+    private static final ThreadLocal<Boolean> IN_LANE = ThreadLocal.withInitial(() -> false);
+
+    private final ExecutorService[] lanes; // null when disabled
+
+    public InstanceMailbox(@Value("${miniflow.engine.mailbox.enabled:false}") boolean enabled,
+                           @Value("${miniflow.engine.mailbox.lanes:32}") int lanes) {
+        if (!enabled) {
+            this.lanes = null;
+            return;
+        }
+        this.lanes = new ExecutorService[Math.max(1, lanes)];
+        for (int i = 0; i < this.lanes.length; i++) {
+            String name = "miniflow-mailbox-" + i;
+            this.lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(() -> {
+                    IN_LANE.set(true);
+                    r.run();
+                }, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        log.info("Instance mailbox enabled with {} lanes", this.lanes.length);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (lanes != null) {
+            for (ExecutorService lane : lanes) lane.shutdown();
+        }
+    }
+
+    public <T> T call(UUID instanceId, Supplier<T> command) {
+        if (lanes == null || IN_LANE.get() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return command.get();
+        }
+        Future<T> f = lanes[Math.floorMod(instanceId.hashCode(), lanes.length)].submit(command::get);
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            // the command stays queued and will still run; only this caller stops waiting
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for instance " + instanceId, e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/JavaDelegateRegistry.java
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import com.miniflow.core.DbBackedEngine.JavaDelegate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Resolves the delegate behind a {@code java.class} or {@code java.bean} service task once per
+ * deployment and caches how to obtain it, so executions do no class loading or reflective lookups.
+ * Each deployment of a process gets its own set; redeploying replaces it, so a new definition
+ * never runs a delegate instance created for the previous one.
+ * <ul>
+ *   <li>{@code java.bean} – a Spring bean by name; singletons are cached, other scopes are fetched per call</li>
+ *   <li>{@code java.class} – a Spring bean of that type if there is exactly one, otherwise the class itself:
+ *       one shared instance when annotated {@link StatelessDelegate}, else a new instance per execution
+ *       through a cached constructor {@link MethodHandle}</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class JavaDelegateRegistry {
+
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(JavaDelegate.class);
+
+    private final ListableBeanFactory beans; // null when used outside Spring
+    // processId -> ("bean:" name | "class:" name) -> factory
+    private final Map<String, Map<String, Supplier<JavaDelegate>>> byProcess = new ConcurrentHashMap<>();
+
+    public JavaDelegateRegistry(ListableBeanFactory beans) {
+        this.beans = beans;
+    }
+
+    /** True if the props name a delegate this registry can run. */
+    public static boolean isDelegate(Map<String, String> props) {
+        return props.containsKey("java.bean") || props.containsKey("java.class");
+    }
+
+    /**
+     * Resolves the delegates named by a deployment's service tasks without activating them. Called
+     * before the deployment is persisted, so a missing class or bean fails it.
+     *
+     * @return The resolved set, to pass to {@link #activate} once the deployment is stored
+     */
+    public Map<String, Supplier<JavaDelegate>> prepare(Collection<Map<String, String>> tasks) {
+        Map<String, Supplier<JavaDelegate>> out = new ConcurrentHashMap<>();
+        for (Map<String, String> props : tasks) {
+            if (isDelegate(props)) out.computeIfAbsent(key(props), this::resolve);
+        }
+        return out;
+    }
+
+    /** Makes a prepared set the one used for the process, dropping the previous deployment's. */
+    public void activate(String processId, Map<String, Supplier<JavaDelegate>> prepared) {
+        byProcess.put(processId, prepared);
+    }
+
+    /** The delegate to run for one execution of a task of the given process. */
+    public JavaDelegate delegate(String processId, Map<String, String> props) {
+        return byProcess.computeIfAbsent(processId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key(props), this::resolve)
+                .get();
+    }
+
+    private static String key(Map<String, String> props) {
+        String bean = props.get("java.bean");
+        if (bean != null && !bean.isBlank()) {
+            return "bean:" + bean.trim();
+        }
+        String className = props.get("java.class");
+        if (className == null || className.isBlank()) {
+            throw new IllegalArgumentException("Service task has neither java.bean nor java.class");
+        }
+        return "class:" + className.trim();
+    }
+
+    private Supplier<JavaDelegate> resolve(String key) {
+        String name = key.substring(key.indexOf(':') + 1);
+        return key.startsWith("bean:") ? resolveBean(name) : resolveClass(name);
+    }
+
+    private Supplier<JavaDelegate> resolveBean(String name) {
+        if (beans == null || !beans.containsBean(name)) {
+            throw new IllegalArgumentException("No delegate bean named " + name);
+        }
+        if (!beans.isTypeMatch(name, JavaDelegate.class)) {
+            throw new IllegalArgumentException("Bean does not implement JavaDelegate: " + name);
+        }
+        if (beans.isSingleton(name)) {
+            JavaDelegate d = beans.getBean(name, JavaDelegate.class);
+            return () -> d;
+        }
+        return () -> beans.getBean(name, JavaDelegate.class);
+    }
+
+    private Supplier<JavaDelegate> resolveClass(String className) {
+        Class<?> cl;
+        try {
+            cl = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Delegate class not found: " + className, e);
+        }
+        if (!JavaDelegate.class.isAssignableFrom(cl)) {
+            throw new IllegalArgumentException("Class does not implement JavaDelegate: " + className);
+        }
+
+        if (beans != null) {
+            String[] names = beans.getBeanNamesForType(cl);
+            if (names.length == 1) {
+                log.debug("Delegate {} resolved to Spring bean {}", className, names[0]);
+                return resolveBean(names[0]);
+            }
+        }
+
+        MethodHandle ctor = constructor(cl);
+        if (cl.isAnnotationPresent(StatelessDelegate.class)) {
+            JavaDelegate shared = newInstance(ctor, className);
+            return () -> shared;
+        }
+        return () -> newInstance(ctor, className);
+    }
+
+    private static MethodHandle constructor(Class<?> cl) {
+        try {
+            Constructor<?> c = cl.getDeclaredConstructor();
+            c.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(c).asType(FACTORY_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("Delegate class needs an accessible no-arg constructor: " + cl.getName(), e);
+        }
+    }
+
+    private static JavaDelegate newInstance(MethodHandle ctor, String className) {
+        try {
+            return (JavaDelegate) ctor.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException("Cannot instantiate delegate " + className, t);
+        }
+    }
+}
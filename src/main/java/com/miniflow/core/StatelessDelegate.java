@@ -0,0 +1,17 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/core/StatelessDelegate.java
+// ---------------------------------------------------------------------------
+package com.miniflow.core;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a {@link DbBackedEngine.JavaDelegate} as safe to share between executions and threads.
+ * {@link JavaDelegateRegistry} creates one instance of such a class per deployment and reuses it;
+ * unmarked classes get a fresh instance per execution.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface StatelessDelegate {
+}
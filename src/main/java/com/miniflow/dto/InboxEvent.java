@@ -0,0 +1,18 @@
+package com.miniflow.dto;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/** A change to the task inbox, pushed to subscribers whose user or groups can see the task. */
+public record InboxEvent(
+        Type type,
+        UUID taskId,
+        UUID instanceId,
+        String nodeId,
+        String name,
+        String assignee,
+        OffsetDateTime createdAt,
+        OffsetDateTime dueDateTime) {
+
+    public enum Type { CREATED, CLAIMED, COMPLETED }
+}
@@ -0,0 +1,7 @@
+package com.miniflow.dto;
+
+import java.util.List;
+
+/** One page of a keyset-paginated list; {@code nextCursor} is null on the last page. */
+public record KeysetSlice<T>(List<T> items, String nextCursor) {
+}
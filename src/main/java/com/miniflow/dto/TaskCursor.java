@@ -0,0 +1,51 @@
+package com.miniflow.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position in a task list: the sort timestamp and id of the last row returned.
+ * <p>
+ * The timestamp travels as text so that {@code infinity} (tasks without a due date sort last)
+ * and {@code -infinity} (before the first row) can be bound as Postgres timestamptz literals.
+ * Clients treat the encoded form as opaque.
+ */
+public record TaskCursor(String sortKey, UUID id) {
+
+    public static final String NO_DATE = "infinity";
+    private static final String BEFORE_ALL = "-infinity";
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+
+    /** Position before the first row; null or blank cursors decode to this. */
+    public static TaskCursor start() {
+        return new TaskCursor(BEFORE_ALL, MIN_ID);
+    }
+
+    /** Position of a row sorted by {@code at}; a null {@code at} sorts after every date. */
+    public static TaskCursor after(OffsetDateTime at, UUID id) {
+        return new TaskCursor(at == null ? NO_DATE : at.toString(), id);
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((sortKey + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TaskCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return start();
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int bar = raw.lastIndexOf('|');
+            String key = raw.substring(0, bar);
+            if (!NO_DATE.equals(key) && !BEFORE_ALL.equals(key)) {
+                OffsetDateTime.parse(key); // reject anything Postgres would fail to cast
+            }
+            return new TaskCursor(key, UUID.fromString(raw.substring(bar + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
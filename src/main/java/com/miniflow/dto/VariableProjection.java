@@ -0,0 +1,102 @@
+package com.miniflow.dto;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Which process variables a task list returns: all of them, none, or a whitelist of top-level
+ * keys. Native list queries pick the keys out of the jsonb in the query itself; JPQL lists load the
+ * whole map and are trimmed afterwards with {@code apply}, which shrinks the response but not
+ * what is read from the database.
+ * <p>
+ * Request form ({@code vars} parameter): {@code *} for all, {@code -} for none, otherwise a
+ * comma-separated list of keys.
+ */
+public record VariableProjection(Mode mode, List<String> keys) {
+
+    public enum Mode { ALL, NONE, KEYS }
+
+    public static final VariableProjection ALL = new VariableProjection(Mode.ALL, List.of());
+    public static final VariableProjection NONE = new VariableProjection(Mode.NONE, List.of());
+
+    public VariableProjection {
+        keys = List.copyOf(keys);
+    }
+
+    public static VariableProjection keys(List<String> keys) {
+        return keys.isEmpty() ? NONE : new VariableProjection(Mode.KEYS, keys);
+    }
+
+    /** Parses the {@code vars} request parameter; null or blank yields {@code dflt}. */
+    public static VariableProjection parse(String vars, VariableProjection dflt) {
+        if (vars == null || vars.isBlank()) return dflt;
+        String v = vars.trim();
+        if ("*".equals(v)) return ALL;
+        if ("-".equals(v)) return NONE;
+        return keys(Arrays.stream(v.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .distinct()
+                .toList());
+    }
+
+    public String[] keyArray() {
+        return keys.toArray(String[]::new);
+    }
+
+    /**
+     * Applies the projection to an already loaded map, for lists whose query cannot project in
+     * SQL; {@code vars} itself is returned for {@link Mode#ALL}.
+     */
+    public Map<String, Object> apply(Map<String, Object> vars) {
+        if (mode == Mode.ALL) return vars;
+        if (mode == Mode.NONE || vars == null) return Map.of();
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (String k : keys) {
+            Object v = vars.get(k);
+            if (v != null) out.put(k, v);
+        }
+        return out;
+    }
+
+    public TaskSummaryDTO apply(TaskSummaryDTO t) {
+        if (mode == Mode.ALL) return t;
+        return new TaskSummaryDTO(t.taskId, t.instanceId, t.processId, t.processName, t.nodeId, t.stepName,
+                t.assignee, t.createdAt, t.dueDateTime, t.completedAt, t.state, t.businessKey,
+                apply(t.variables), t.formKey);
+    }
+
+    public TaskSummaryView apply(TaskSummaryView t) {
+        return mode == Mode.ALL ? t : new ProjectedView(t, apply(t.getVariables()));
+    }
+
+    // a TaskSummaryView with its variables replaced; a class, not a record, so JSON sees only the getters
+    private static final class ProjectedView implements TaskSummaryView {
+        private final TaskSummaryView t;
+        private final Map<String, Object> variables;
+
+        ProjectedView(TaskSummaryView t, Map<String, Object> variables) {
+            this.t = t;
+            this.variables = variables;
+        }
+
+        @Override public UUID getTaskId() { return t.getTaskId(); }
+        @Override public UUID getInstanceId() { return t.getInstanceId(); }
+        @Override public String getProcessId() { return t.getProcessId(); }
+        @Override public String getProcessName() { return t.getProcessName(); }
+        @Override public String getNodeId() { return t.getNodeId(); }
+        @Override public String getStepName() { return t.getStepName(); }
+        @Override public String getAssignee() { return t.getAssignee(); }
+        @Override public OffsetDateTime getCreatedAt() { return t.getCreatedAt(); }
+        @Override public OffsetDateTime getDueDateTime() { return t.getDueDateTime(); }
+        @Override public OffsetDateTime getCompletedAt() { return t.getCompletedAt(); }
+        @Override public String getState() { return t.getState(); }
+        @Override public String getBusinessKey() { return t.getBusinessKey(); }
+        @Override public Map<String, Object> getVariables() { return variables; }
+        @Override public String getFormKey() { return t.getFormKey(); }
+    }
+}
@@ -62,7 +62,7 @@ public class SimpleBpmnParser {
         }
       }
 
-      // Pass 2: flows with conditions (use SpEL via Expr)
+      // Pass 2: flows with conditions (SpEL via Expr, parsed once here at deploy)
       for (int i=0;i<kids.getLength();i++){
         org.w3c.dom.Node n = kids.item(i);
         if (n.getNodeType()!=org.w3c.dom.Node.ELEMENT_NODE) continue;
@@ -75,12 +75,11 @@ public class SimpleBpmnParser {
         Element exprEl = first(e, "conditionExpression");
         String exprText = (exprEl==null? null : exprEl.getTextContent());
 
-        EngineModel.Condition cond = (vars) -> com.miniflow.core.Expr.evalLogical(exprText, vars);
         EngineModel.Condition condTrue =  v -> true;
-        if(exprText==null){
+        if(exprText==null || exprText.isBlank()){
           b.flow(from, to, condTrue);
         }else{
-          b.flow(from, to, cond);
+          b.flow(from, to, parseExpr(exprText));
         }
 
       }
@@ -105,9 +104,9 @@ public class SimpleBpmnParser {
     }
   }
 
-  // Allow ${...} or #{...}, anything SpEL; Expr.evalLogical handles nulls safely
+  // Allow ${...} or #{...}, anything SpEL; compiled and cached once, Expr.evalLogical handles nulls safely
   private static EngineModel.Condition parseExpr(String raw){
-    return vars -> com.miniflow.core.Expr.evalLogical(raw, vars);
+    return com.miniflow.core.Expr.condition(raw);
   }
 
   // Namespace-aware props reader
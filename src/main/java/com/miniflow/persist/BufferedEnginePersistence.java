@@ -0,0 +1,390 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/persist/BufferedEnginePersistence.java
+// ---------------------------------------------------------------------------
+package com.miniflow.persist;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-behind unit of work for a single instance.
+ * <p>
+ * Token moves, variable writes, new user tasks, new jobs and instance completion are kept in
+ * memory while the engine advances, and written to the delegate once by {@link #flush()}
+ * (tokens first, so user tasks can reference them). Join arrivals go straight to the delegate:
+ * the counter must be shared with concurrent transactions. Reads are served from memory after the
+ * first load, and only variables whose values differ from the loaded ones are written back.
+ * <p>
+ * The instance version is read before any other state. The flush writes only if the version is
+ * still the same, and advances it. A concurrent command on the same instance then fails with an
+ * optimistic locking error instead of overwriting this one, and the engine retries it.
+ * Not thread-safe: create one per engine command.
+ */
+public class BufferedEnginePersistence implements EnginePersistencePort {
+
+    private final EnginePersistencePort delegate;
+    private final UUID instanceId;
+
+    private Map<UUID, TokenState> tokens;               // lazily loaded from delegate.activeTokens
+    private Map<String, Object> variables;              // lazily loaded from delegate.variables
+    private Map<String, Object> persistedVariables;     // deep copy of what the delegate holds
+    private boolean variablesDirty;
+    private final List<NewUserTask> tasks = new ArrayList<>();
+    private final List<PendingJob> jobs = new ArrayList<>();
+    private boolean completed;
+    private boolean wroteThrough;                       // a write went straight to the delegate
+    private Long expectedVersion;                       // instance version this command's reads are based on
+    private boolean fresh;                              // created in this transaction, invisible to others
+
+    public BufferedEnginePersistence(EnginePersistencePort delegate, UUID instanceId) {
+        this.delegate = delegate;
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * A unit of work for an instance inserted earlier in the same transaction: there is nothing to
+     * load, and no other command can see the instance yet, so reads never reach the delegate and
+     * the flush skips the version check unless variables changed.
+     */
+    public static BufferedEnginePersistence forNewInstance(EnginePersistencePort delegate, UUID instanceId,
+                                                           Map<String, Object> vars) {
+        BufferedEnginePersistence b = new BufferedEnginePersistence(delegate, instanceId);
+        b.fresh = true;
+        b.tokens = new LinkedHashMap<>();
+        b.variables = vars == null ? new HashMap<>() : new HashMap<>(vars);
+        b.persistedVariables = VariableDelta.snapshot(b.variables);
+        b.expectedVersion = 0L;
+        return b;
+    }
+
+    public UUID instanceId() {
+        return instanceId;
+    }
+
+    /** Seeds the active tokens from a set-based load, so the first read needs no query. */
+    public void preloadTokens(List<TokenView> active) {
+        if (tokens != null) throw new IllegalStateException("Tokens already loaded for " + instanceId);
+        expectedVersion(); // the version must not be newer than the tokens
+        tokens = new LinkedHashMap<>();
+        for (TokenView tv : active) {
+            tokens.put(tv.tokenId(), new TokenState(tv.tokenId(), tv.nodeId(), true, false));
+        }
+    }
+
+    /** True once the engine has marked the instance completed in this unit of work (until flushed). */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    // ---- instance / variables ----
+
+    @Override
+    public UUID createInstance(String processId, String businessKey, Map<String, Object> vars) {
+        return delegate.createInstance(processId, businessKey, vars);
+    }
+
+    @Override
+    public void createInstances(String processId, List<NewInstance> instances) {
+        delegate.createInstances(processId, instances);
+    }
+
+    @Override
+    public void markInstanceCompleted(UUID iid) {
+        requireSameInstance(iid);
+        completed = true;
+    }
+
+    @Override
+    public void updateVariables(UUID iid, UnaryOperator<Map<String, Object>> mutator) {
+        requireSameInstance(iid);
+        Map<String, Object> next = mutator.apply(new HashMap<>(loadVariables()));
+        variables = next == null ? new HashMap<>() : next;
+        variablesDirty = true;
+    }
+
+    @Override
+    public Map<String, Object> variables(UUID iid) {
+        requireSameInstance(iid);
+        return new HashMap<>(loadVariables());
+    }
+
+    @Override
+    public long instanceVersion(UUID iid) {
+        requireSameInstance(iid);
+        return expectedVersion();
+    }
+
+    @Override
+    public void mergeVariables(UUID iid, VariableDelta delta, long ignoredVersion) {
+        requireSameInstance(iid);
+        Map<String, Object> next = new HashMap<>(loadVariables());
+        next.keySet().removeAll(delta.removed());
+        next.putAll(delta.changed());
+        variables = next;
+        variablesDirty = true;
+    }
+
+    // ---- tokens ----
+
+    @Override
+    public UUID createToken(UUID iid, String nodeId) {
+        requireSameInstance(iid);
+        UUID id = UUID.randomUUID();
+        loadTokens().put(id, new TokenState(id, nodeId, true, true));
+        return id;
+    }
+
+    @Override
+    public void moveToken(UUID tokenId, String nodeId) {
+        TokenState t = requireToken(tokenId);
+        t.nodeId = nodeId;
+        t.dirty = true;
+    }
+
+    @Override
+    public void consumeToken(UUID tokenId) {
+        TokenState t = requireToken(tokenId);
+        t.active = false;
+        t.dirty = true;
+    }
+
+    @Override
+    public Map<UUID, List<TokenView>> activeTokens(Collection<UUID> instanceIds) {
+        return delegate.activeTokens(instanceIds);
+    }
+
+    @Override
+    public List<TokenView> activeTokens(UUID iid) {
+        requireSameInstance(iid);
+        List<TokenView> out = new ArrayList<>();
+        for (TokenState t : loadTokens().values()) {
+            if (t.active) out.add(new TokenView(t.id, t.nodeId));
+        }
+        return out;
+    }
+
+    // ---- joins ----
+
+    @Override
+    public int incrementJoin(UUID iid, String nodeId, int expectedIncoming) {
+        requireSameInstance(iid);
+        wroteThrough = true;
+        return delegate.incrementJoin(iid, nodeId, expectedIncoming);
+    }
+
+    @Override
+    public void resetJoin(UUID iid, String nodeId) {
+        requireSameInstance(iid);
+        wroteThrough = true;
+        delegate.resetJoin(iid, nodeId);
+    }
+
+    // ---- tasks ----
+
+    @Override
+    public UUID createUserTask(UUID iid, UUID tokenId, String nodeId, String name, String formKey,
+                               String assignee, List<String> candidateUsers, List<String> candidateGroups,
+                               Integer priority, OffsetDateTime dueDate) {
+        requireSameInstance(iid);
+        // the id is assigned by the delegate at flush time
+        tasks.add(new NewUserTask(iid, tokenId, nodeId, name, formKey, assignee,
+                candidateUsers, candidateGroups, priority, dueDate));
+        return null;
+    }
+
+    @Override
+    public UUID createUserTaskWithDueDate(UUID iid, UUID tokenId, String nodeId, String name, OffsetDateTime dueDateTime) {
+        requireSameInstance(iid);
+        tasks.add(new NewUserTask(iid, tokenId, nodeId, name, null, null,
+                List.of(), List.of(), null, dueDateTime));
+        return null;
+    }
+
+    @Override
+    public void completeUserTask(UUID taskId) {
+        wroteThrough = true;
+        delegate.completeUserTask(taskId);
+    }
+
+    @Override
+    public boolean hasOpenTasks(UUID iid) {
+        requireSameInstance(iid);
+        if (!tasks.isEmpty()) return true;
+        if (fresh) return false;
+        expectedVersion();
+        return delegate.hasOpenTasks(iid);
+    }
+
+    // ---- jobs ----
+
+    @Override
+    public UUID createJob(UUID iid, UUID tokenId, String nodeId) {
+        requireSameInstance(iid);
+        jobs.add(new PendingJob(tokenId, nodeId));
+        return null;
+    }
+
+    @Override
+    public boolean hasOpenJobs(UUID iid) {
+        requireSameInstance(iid);
+        if (!jobs.isEmpty()) return true;
+        if (fresh) return false;
+        expectedVersion();
+        return delegate.hasOpenJobs(iid);
+    }
+
+    @Override
+    public List<JobView> claimJobs(String owner, int limit, int lockSeconds) {
+        return delegate.claimJobs(owner, limit, lockSeconds);
+    }
+
+    @Override
+    public void completeJob(UUID jobId, String owner) {
+        wroteThrough = true;
+        delegate.completeJob(jobId, owner);
+    }
+
+    @Override
+    public void failJob(UUID jobId, String owner, String error, OffsetDateTime retryAt) {
+        delegate.failJob(jobId, owner, error, retryAt);
+    }
+
+    // ---- write-behind ----
+
+    @Override
+    public void saveTokens(UUID iid, Collection<TokenChange> changes) {
+        delegate.saveTokens(iid, changes);
+    }
+
+    /**
+     * Writes every buffered change to the delegate, starting with the version check so a conflicting
+     * command fails before anything else is written. Safe to call more than once.
+     */
+    public void flush() {
+        flushAll(List.of(this));
+    }
+
+    /**
+     * Flushes several units of work that share a delegate: each unit's own writes in turn, then the
+     * user tasks of all of them in one {@link EnginePersistencePort#createUserTasks} call, then the
+     * instance completions. Used for a chunk of new instances, so their task and inbox rows are
+     * written as one batch rather than one round per instance.
+     */
+    public static void flushAll(List<BufferedEnginePersistence> units) {
+        if (units.isEmpty()) return;
+        List<NewUserTask> newTasks = new ArrayList<>();
+        List<BufferedEnginePersistence> completing = new ArrayList<>();
+        for (BufferedEnginePersistence u : units) {
+            if (u.flushState(newTasks) && u.completed) completing.add(u);
+        }
+        if (!newTasks.isEmpty()) units.get(0).delegate.createUserTasks(newTasks);
+        for (BufferedEnginePersistence u : completing) {
+            u.delegate.markInstanceCompleted(u.instanceId);
+            u.completed = false;
+        }
+    }
+
+    /** Writes everything but the user tasks (moved to {@code newTasks}) and the completion; false if clean. */
+    private boolean flushState(List<NewUserTask> newTasks) {
+        List<TokenChange> changes = new ArrayList<>();
+        if (tokens != null) {
+            for (TokenState t : tokens.values()) {
+                if (t.created || t.dirty) {
+                    changes.add(new TokenChange(t.id, t.nodeId, t.active, t.created));
+                    t.created = false;
+                    t.dirty = false;
+                }
+            }
+            tokens.values().removeIf(t -> !t.active);
+        }
+        VariableDelta delta = variablesDirty
+                ? VariableDelta.between(persistedVariables, variables) : VariableDelta.none();
+        variablesDirty = false;
+
+        boolean dirty = wroteThrough || !changes.isEmpty() || !delta.isEmpty()
+                || !jobs.isEmpty() || !tasks.isEmpty() || completed;
+        if (!dirty) return false;
+
+        if (!fresh || !delta.isEmpty()) {
+            delegate.mergeVariables(instanceId, delta, expectedVersion());
+            if (!delta.isEmpty()) persistedVariables = VariableDelta.snapshot(variables);
+            expectedVersion = null; // we hold the row lock now; re-read lazily if this unit is reused
+            fresh = false;
+        }
+        wroteThrough = false;
+
+        if (!changes.isEmpty()) delegate.saveTokens(instanceId, changes);
+        for (PendingJob j : jobs) {
+            delegate.createJob(instanceId, j.tokenId, j.nodeId);
+        }
+        jobs.clear();
+        newTasks.addAll(tasks);
+        tasks.clear();
+        return true;
+    }
+
+    private long expectedVersion() {
+        if (expectedVersion == null) {
+            expectedVersion = delegate.instanceVersion(instanceId);
+        }
+        return expectedVersion;
+    }
+
+    private Map<UUID, TokenState> loadTokens() {
+        if (tokens == null) {
+            expectedVersion();
+            tokens = new LinkedHashMap<>();
+            for (TokenView tv : delegate.activeTokens(instanceId)) {
+                tokens.put(tv.tokenId(), new TokenState(tv.tokenId(), tv.nodeId(), true, false));
+            }
+        }
+        return tokens;
+    }
+
+    private Map<String, Object> loadVariables() {
+        if (variables == null) {
+            expectedVersion();
+            Map<String, Object> v = delegate.variables(instanceId);
+            variables = v == null ? new HashMap<>() : new HashMap<>(v);
+            persistedVariables = VariableDelta.snapshot(variables);
+        }
+        return variables;
+    }
+
+    private TokenState requireToken(UUID tokenId) {
+        TokenState t = loadTokens().get(tokenId);
+        if (t == null) throw new IllegalStateException("Token not part of this unit of work: " + tokenId);
+        return t;
+    }
+
+    private void requireSameInstance(UUID iid) {
+        if (!instanceId.equals(iid))
+            throw new IllegalArgumentException("Unit of work is bound to instance " + instanceId + ", got " + iid);
+    }
+
+    private static final class TokenState {
+        final UUID id;
+        String nodeId;
+        boolean active;
+        boolean created;
+        boolean dirty;
+
+        TokenState(UUID id, String nodeId, boolean active, boolean created) {
+            this.id = id;
+            this.nodeId = nodeId;
+            this.active = active;
+            this.created = created;
+        }
+    }
+
+    private record PendingJob(UUID tokenId, String nodeId) {
+    }
+
+}
@@ -4,6 +4,7 @@
 package com.miniflow.persist;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -13,10 +14,25 @@ public interface EnginePersistencePort {
 
     UUID createInstance(String processId, String businessKey, Map<String, Object> vars);
 
+    /** Inserts many instances (and their variable rows) as JDBC batches; the rows exist when this returns. */
+    void createInstances(String processId, List<NewInstance> instances);
+
     void markInstanceCompleted(UUID instanceId);
 
     void updateVariables(UUID instanceId, UnaryOperator<Map<String, Object>> mutator);
 
+    Map<String, Object> variables(UUID instanceId);
+
+    /** Optimistic-lock version of the instance row; advanced by every {@link #mergeVariables}. */
+    long instanceVersion(UUID instanceId);
+
+    /**
+     * Writes only the changed and removed keys (the delta may be empty) and advances the instance
+     * version, provided it still equals expectedVersion.
+     * @throws org.springframework.dao.OptimisticLockingFailureException if another command got there first
+     */
+    void mergeVariables(UUID instanceId, VariableDelta delta, long expectedVersion);
+
     UUID createToken(UUID instanceId, String nodeId);
 
     void moveToken(UUID tokenId, String nodeId);
@@ -25,21 +41,81 @@ public interface EnginePersistencePort {
 
     List<TokenView> activeTokens(UUID instanceId);
 
+    /** Active tokens of many instances in one query; instances without tokens may be absent. */
+    Map<UUID, List<TokenView>> activeTokens(Collection<UUID> instanceIds);
+
+    /**
+     * Atomically records one arrival at a parallel join and returns the count within the current
+     * round (1..expectedIncoming). The counter starts a new round after reaching expectedIncoming,
+     * so a firing join needs no separate reset.
+     */
     int incrementJoin(UUID instanceId, String nodeId, int expectedIncoming);
 
     void resetJoin(UUID instanceId, String nodeId);
 
+    /** Writes the final state of every token touched by a write-behind pass in one go. */
+    void saveTokens(UUID instanceId, Collection<TokenChange> changes);
+
     UUID createUserTask(UUID instanceId, UUID tokenId, String nodeId, String name, String formKey,
                         String assignee, List<String> candidateUsers, List<String> candidateGroups,
                         Integer priority, OffsetDateTime dueDate);
     
+    /**
+     * Creates many user tasks, so their rows and inbox entries go out as JDBC batches instead of a
+     * round of statements per task. Task ids are returned in request order.
+     */
+    default List<UUID> createUserTasks(List<NewUserTask> tasks) {
+        List<UUID> ids = new java.util.ArrayList<>(tasks.size());
+        for (NewUserTask t : tasks) {
+            ids.add(createUserTask(t.instanceId(), t.tokenId(), t.nodeId(), t.name(), t.formKey(), t.assignee(),
+                    t.candidateUsers(), t.candidateGroups(), t.priority(), t.dueDate()));
+        }
+        return ids;
+    }
+
     UUID createUserTaskWithDueDate(UUID instanceId, UUID tokenId, String nodeId, String name, java.time.OffsetDateTime dueDateTime);
 
     void completeUserTask(UUID taskId);
 
     boolean hasOpenTasks(UUID instanceId);
 
+    // -------- async service task jobs --------
+
+    UUID createJob(UUID instanceId, UUID tokenId, String nodeId);
+
+    /** True while a job is pending, running or failed (an incident keeps the instance open). */
+    boolean hasOpenJobs(UUID instanceId);
+
+    List<JobView> claimJobs(String owner, int limit, int lockSeconds);
+
+    /** Marks a job claimed by {@code owner} done; fails if the claim was lost in the meantime. */
+    void completeJob(UUID jobId, String owner);
+
+    /**
+     * Releases a job claimed by {@code owner} for another attempt at {@code retryAt}, or marks it
+     * FAILED when null. Does nothing if another worker has reclaimed the job since.
+     */
+    void failJob(UUID jobId, String owner, String error, OffsetDateTime retryAt);
+
     record TokenView(UUID tokenId, String nodeId) {
 
     }
+
+    record TokenChange(UUID tokenId, String nodeId, boolean active, boolean created) {
+
+    }
+
+    record NewInstance(UUID instanceId, String businessKey, Map<String, Object> vars) {
+
+    }
+
+    record NewUserTask(UUID instanceId, UUID tokenId, String nodeId, String name, String formKey,
+                       String assignee, List<String> candidateUsers, List<String> candidateGroups,
+                       Integer priority, OffsetDateTime dueDate) {
+
+    }
+
+    record JobView(UUID jobId, UUID instanceId, UUID tokenId, String nodeId, int attempts, String owner) {
+
+    }
 }
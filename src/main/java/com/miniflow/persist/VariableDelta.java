@@ -0,0 +1,63 @@
+// ---------------------------------------------------------------------------
+// src/main/java/com/miniflow/persist/VariableDelta.java
+// ---------------------------------------------------------------------------
+package com.miniflow.persist;
+
+import java.util.*;
+
+/**
+ * The keys that differ between two versions of an instance's variables, so persistence can write
+ * what changed instead of the whole map.
+ * <p>
+ * Compare against a {@link #snapshot} taken when the variables were loaded: handlers may mutate
+ * nested maps and lists in place, which a shallow copy would not notice.
+ */
+public record VariableDelta(Map<String, Object> changed, Set<String> removed) {
+
+    private static final VariableDelta NONE = new VariableDelta(Map.of(), Set.of());
+
+    public static VariableDelta none() {
+        return NONE;
+    }
+
+    public static VariableDelta between(Map<String, Object> before, Map<String, Object> after) {
+        Map<String, Object> b = before == null ? Map.of() : before;
+        Map<String, Object> a = after == null ? Map.of() : after;
+        Map<String, Object> changed = new LinkedHashMap<>();
+        for (var e : a.entrySet()) {
+            if (!b.containsKey(e.getKey()) || !Objects.equals(b.get(e.getKey()), e.getValue())) {
+                changed.put(e.getKey(), e.getValue());
+            }
+        }
+        Set<String> removed = new LinkedHashSet<>();
+        for (String k : b.keySet()) {
+            if (!a.containsKey(k)) removed.add(k);
+        }
+        return changed.isEmpty() && removed.isEmpty() ? NONE : new VariableDelta(changed, removed);
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+    /** Copies maps and collections recursively; other values are treated as immutable. */
+    public static Map<String, Object> snapshot(Map<String, Object> vars) {
+        Map<String, Object> out = new HashMap<>(vars == null ? 0 : vars.size() * 2);
+        if (vars != null) vars.forEach((k, v) -> out.put(k, copy(v)));
+        return out;
+    }
+
+    private static Object copy(Object v) {
+        if (v instanceof Map<?, ?> m) {
+            Map<Object, Object> out = new LinkedHashMap<>(m.size() * 2);
+            m.forEach((k, x) -> out.put(k, copy(x)));
+            return out;
+        }
+        if (v instanceof Collection<?> c) {
+            List<Object> out = new ArrayList<>(c.size());
+            for (Object x : c) out.add(copy(x));
+            return out;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,20 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "wf_command_log")
+public class WfCommandLog {
+    @Id
+    public String commandId;
+    public String status;
+    public String result;
+    public String error;
+    @Column(insertable = false, updatable = false)
+    public OffsetDateTime processedAt;
+}
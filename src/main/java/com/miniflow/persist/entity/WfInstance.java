@@ -5,10 +5,12 @@ package com.miniflow.persist.entity;
 import jakarta.persistence.*;
 import java.time.OffsetDateTime;
 import java.util.*;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
-@Entity @Table(name="wf_instance")
+// status updates must not rewrite the variables column, which mergeVariables owns
+@Entity @Table(name="wf_instance") @DynamicUpdate
 public class WfInstance {
     @Id public UUID id;
 
@@ -21,6 +23,15 @@ public class WfInstance {
     @Column(columnDefinition = "jsonb")
     public Map<String, Object> variables = new HashMap<>();
 
+    // optimistic lock; also advanced by WfInstanceRepo.mergeVariables
+    @Version
+    public Long version;
+
+    // the instance-created event is always seq 1, written with the row; later events take theirs
+    // through WfInstanceRepo (see WorkflowAvroEventService)
+    @Column(name = "event_seq", updatable = false)
+    public long eventSeq = 1;
+
     public OffsetDateTime createdAt;
     public OffsetDateTime updatedAt;
 }
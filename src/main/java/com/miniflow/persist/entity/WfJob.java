@@ -0,0 +1,28 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "wf_job")
+public class WfJob {
+    @Id
+    public UUID id;
+    public UUID instanceId;
+    public UUID tokenId;
+    public String nodeId;
+    public String state;          // PENDING, RUNNING, DONE, FAILED
+    public int attempts;
+    @Column(columnDefinition = "text")
+    public String lastError;
+    public String lockedBy;
+    public OffsetDateTime lockedUntil;
+    public OffsetDateTime dueAt;
+    public OffsetDateTime createdAt;
+    public OffsetDateTime updatedAt;
+}
@@ -0,0 +1,24 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "wf_outbox")
+public class WfOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    public Long id;
+    public String topic;
+    public String msgKey;
+    @Column(nullable = false)
+    public byte[] payload;        // Avro binary datum
+    @Column(insertable = false, updatable = false)
+    public OffsetDateTime createdAt;
+}
@@ -0,0 +1,18 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.OffsetDateTime;
+
+/** Id of an event already applied to the reporting read model. */
+@Entity
+@Table(name = "wf_report_event")
+public class WfReportEvent {
+    @Id
+    public String eventId;
+    @Column(insertable = false, updatable = false)
+    public OffsetDateTime projectedAt;
+}
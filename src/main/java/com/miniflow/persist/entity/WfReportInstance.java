@@ -0,0 +1,22 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/** Reporting read model: latest status per instance, written by WorkflowEventProjector only. */
+@Entity
+@Table(name = "wf_report_instance")
+public class WfReportInstance {
+    @Id
+    public UUID instanceId;
+    public String processId;
+    public String businessKey;
+    public String status;
+    public long lastSeq;
+    public OffsetDateTime createdAt;
+    public OffsetDateTime updatedAt;
+}
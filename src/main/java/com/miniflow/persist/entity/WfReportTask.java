@@ -0,0 +1,23 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/** Last projected state of a task; written by WorkflowEventProjector only. */
+@Entity
+@Table(name = "wf_report_task")
+public class WfReportTask {
+    @Id
+    public UUID taskId;
+    public UUID instanceId;
+    public String processId;
+    public String nodeId;
+    public String assignee;       // '' when unassigned
+    public String state;          // OPEN or COMPLETED
+    public OffsetDateTime createdAt;
+    public OffsetDateTime completedAt;
+}
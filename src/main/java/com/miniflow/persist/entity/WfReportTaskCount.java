@@ -0,0 +1,46 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/** Reporting read model: task counts per process node and assignee ('' = unassigned). */
+@Entity
+@Table(name = "wf_report_task_count")
+@IdClass(WfReportTaskCount.PK.class)
+public class WfReportTaskCount {
+
+    @Id
+    public String processId;
+    @Id
+    public String nodeId;
+    @Id
+    public String assignee;
+
+    public long openCount;
+    public long completedCount;
+
+    public static class PK implements Serializable {
+        public String processId;
+        public String nodeId;
+        public String assignee;
+
+        public PK() {
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PK p && Objects.equals(processId, p.processId)
+                    && Objects.equals(nodeId, p.nodeId) && Objects.equals(assignee, p.assignee);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(processId, nodeId, assignee);
+        }
+    }
+}
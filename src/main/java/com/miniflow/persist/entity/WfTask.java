@@ -20,4 +20,5 @@ public OffsetDateTime createdAt;
 public OffsetDateTime completedAt;
 public OffsetDateTime dueDateTime;
     public String formKey;
-    public String assignee; }
+    public String assignee;
+    public Integer priority; }
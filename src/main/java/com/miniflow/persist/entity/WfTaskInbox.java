@@ -0,0 +1,57 @@
+package com.miniflow.persist.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Inbox read model: one row per (candidate, claimable task) with the summary columns copied in.
+ * {@code principal} is the candidate prefixed with its type, e.g. {@code U:alice} or {@code G:nurses}.
+ * Rows exist only while the task is OPEN and unassigned (see WfTaskInboxRepo).
+ */
+@Entity
+@Table(name = "wf_task_inbox")
+@IdClass(WfTaskInbox.PK.class)
+public class WfTaskInbox {
+
+    @Id
+    @Column(name = "principal", nullable = false)
+    public String principal;
+
+    @Id
+    @Column(name = "task_id", nullable = false)
+    public UUID taskId;
+
+    public UUID instanceId;
+    public String processId;
+    public String processName;
+    public String nodeId;
+    public String name;
+    public String businessKey;
+    public String formKey;
+    public Integer priority;
+    public OffsetDateTime createdAt;
+    public OffsetDateTime dueDateTime;
+
+    // --- PK ---
+    public static class PK implements Serializable {
+        public String principal; public UUID taskId;
+        public PK() {}
+        public PK(String principal, UUID taskId) {
+            this.principal = principal; this.taskId = taskId;
+        }
+        @Override public boolean equals(Object o){
+            if (this == o) return true;
+            if (!(o instanceof PK pk)) return false;
+            return Objects.equals(principal, pk.principal) && Objects.equals(taskId, pk.taskId);
+        }
+        @Override public int hashCode(){ return Objects.hash(principal, taskId); }
+    }
+}
@@ -5,6 +5,7 @@ package com.miniflow.persist.jpa;
 
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,18 +16,24 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.miniflow.persist.entity.*;
 import com.miniflow.persist.repo.*;
+import com.miniflow.dto.InboxEvent;
+import com.miniflow.service.InboxEventHub;
 import com.miniflow.service.WorkflowAvroEventService;
 import org.postgresql.util.PGobject;
 
 import com.miniflow.service.WorkflowAvroEventService;
 
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniflow.persist.EnginePersistencePort;
+import com.miniflow.persist.VariableDelta;
 
 
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -46,8 +53,12 @@ public class JpaEnginePersistence implements EnginePersistencePort {
     private final ObjectMapper om = new ObjectMapper();
     private final WorkflowAvroEventService eventService;
 
-    private final WfTaskCandidateRepo taskCandidateRepo;
+    private final WfJobRepo jobRepo;
+    private final WfTaskInboxRepo inboxRepo;
+    private final InboxEventHub inboxEvents;
 
+    @PersistenceContext
+    private EntityManager em;
 
     public JpaEnginePersistence(
             WfInstanceRepo i,
@@ -56,7 +67,8 @@ public class JpaEnginePersistence implements EnginePersistencePort {
             WfJoinRepo j,
             WfVariableRepo v,
  
-            WorkflowAvroEventService eventService, WfTaskCandidateRepo taskCandidateRepo) {
+            WorkflowAvroEventService eventService,
+            WfJobRepo jobRepo, WfTaskInboxRepo inboxRepo, InboxEventHub inboxEvents) {
  
         this.instanceRepo = i;
         this.tokenRepo = t;
@@ -65,7 +77,9 @@ public class JpaEnginePersistence implements EnginePersistencePort {
         this.varRepo = v;
         this.eventService = eventService;
  
-        this.taskCandidateRepo = taskCandidateRepo;
+        this.jobRepo = jobRepo;
+        this.inboxRepo = inboxRepo;
+        this.inboxEvents = inboxEvents;
  
     }
 // src/main/java/com/miniflow/persist/jpa/JpaEnginePersistence.java
@@ -83,6 +97,9 @@ public class JpaEnginePersistence implements EnginePersistencePort {
         e.createdAt = now();
         e.updatedAt = now();
         instanceRepo.save(e);
+        if (!e.variables.isEmpty()) {
+            varRepo.upsertAll(id, toJsonText(e.variables));
+        }
         
         // Publish instance created event
         eventService.publishInstanceCreatedEvent(e, e.variables);
@@ -90,6 +107,36 @@ public class JpaEnginePersistence implements EnginePersistencePort {
         return id;
     }
 
+    @Override
+    public void createInstances(String processId, List<NewInstance> instances) {
+        OffsetDateTime ts = now();
+        List<WfInstance> created = new ArrayList<>(instances.size());
+        for (NewInstance n : instances) {
+            WfInstance e = new WfInstance();
+            e.id = n.instanceId();
+            e.processId = processId;
+            e.businessKey = n.businessKey();
+            e.status = "RUNNING";
+            e.variables = new HashMap<>(n.vars() == null ? Map.of() : n.vars());
+            e.createdAt = ts;
+            e.updatedAt = ts;
+            em.persist(e);
+            for (var v : e.variables.entrySet()) {
+                WfVariable row = new WfVariable();
+                row.instanceId = e.id;
+                row.key = v.getKey();
+                row.valueText = toJsonText(v.getValue());
+                em.persist(row);
+            }
+            created.add(e);
+        }
+        em.flush(); // batched inserts, before tokens and tasks of these instances reference them
+
+        for (WfInstance e : created) {
+            eventService.publishInstanceCreatedEvent(e, e.variables);
+        }
+    }
+
     @Override
     public void markInstanceCompleted(UUID instanceId) {
         WfInstance e = instanceRepo.findById(instanceId).orElseThrow();
@@ -104,12 +151,41 @@ public class JpaEnginePersistence implements EnginePersistencePort {
     @Override
     public void updateVariables(UUID instanceId, java.util.function.UnaryOperator<Map<String,Object>> mutator) {
         WfInstance e = instanceRepo.findById(instanceId).orElseThrow();
-        Map<String,Object> cur = e.variables == null ? new HashMap<>() : new HashMap<>(e.variables);
-        Map<String,Object> next = mutator.apply(cur);
-        e.variables = next; // <— no toJson
-        e.updatedAt = now();
-        instanceRepo.save(e);
-        upsertVariablesTable(instanceId, next);
+        // deep copy, so in-place changes to nested values show up in the delta
+        Map<String,Object> next = mutator.apply(VariableDelta.snapshot(e.variables));
+        VariableDelta delta = VariableDelta.between(e.variables, next);
+        if (!delta.isEmpty()) mergeVariables(instanceId, delta, e.version == null ? 0L : e.version);
+    }
+
+    @Override
+    public long instanceVersion(UUID instanceId) {
+        // loads the row into the persistence context, so the variables() call that follows is free
+        WfInstance e = instanceRepo.findById(instanceId).orElseThrow();
+        return e.version == null ? 0L : e.version;
+    }
+
+    /**
+     * One versioned jsonb merge on wf_instance plus one upsert into wf_variable, both sized by the
+     * delta rather than by the number of variables the instance holds.
+     */
+    @Override
+    public void mergeVariables(UUID instanceId, VariableDelta delta, long expectedVersion) {
+        String changed = toJsonText(delta.changed());
+        String removed = toJsonText(delta.removed());
+        if (instanceRepo.mergeVariables(instanceId, changed, removed, expectedVersion,
+                eventService.tracksVariableChanges()) == 0) {
+            throw new ObjectOptimisticLockingFailureException(WfInstance.class, instanceId);
+        }
+        if (!delta.changed().isEmpty()) varRepo.upsertAll(instanceId, changed);
+        if (!delta.removed().isEmpty()) varRepo.deleteKeys(instanceId, removed);
+        // a managed copy would now hold stale variables; drop it so the next read reloads
+        em.detach(em.getReference(WfInstance.class, instanceId));
+    }
+
+    @Override
+    public Map<String, Object> variables(UUID instanceId) {
+        WfInstance e = instanceRepo.findById(instanceId).orElseThrow();
+        return e.variables == null ? new HashMap<>() : new HashMap<>(e.variables);
     }
 
     @Override
@@ -153,19 +229,19 @@ public class JpaEnginePersistence implements EnginePersistencePort {
     }
 
     @Override
-    public int incrementJoin(UUID instanceId, String nodeId, int expectedIncoming) {
-        WfJoin.PK pk = new WfJoin.PK(instanceId, nodeId);
-        WfJoin j = joinRepo.findById(pk).orElse(null);
-        if (j == null) {
-            j = new WfJoin();
-            j.instanceId = instanceId;
-            j.nodeId = nodeId;
-            j.arrivals = 1;
-        } else {
-            j.arrivals += 1;
+    public Map<UUID, List<TokenView>> activeTokens(Collection<UUID> instanceIds) {
+        Map<UUID, List<TokenView>> out = new HashMap<>();
+        if (instanceIds.isEmpty()) return out;
+        for (WfToken t : tokenRepo.findByInstanceIdInAndActive(instanceIds, true)) {
+            out.computeIfAbsent(t.instanceId, k -> new ArrayList<>()).add(new TokenView(t.id, t.nodeId));
         }
-        joinRepo.save(j);
-        return j.arrivals;
+        return out;
+    }
+
+    @Override
+    public int incrementJoin(UUID instanceId, String nodeId, int expectedIncoming) {
+        // one upsert: the row lock serializes branches arriving in concurrent transactions
+        return joinRepo.arrive(instanceId, nodeId, Math.max(1, expectedIncoming));
     }
 
     @Override
@@ -173,6 +249,35 @@ public class JpaEnginePersistence implements EnginePersistencePort {
         joinRepo.deleteById(new WfJoin.PK(instanceId, nodeId));
     }
 
+    /**
+     * New tokens go through persist (no select-before-insert); existing ones were loaded by
+     * activeTokens() in this transaction, so find() hits the persistence context and the
+     * updates are batched at flush.
+     */
+    @Override
+    public void saveTokens(UUID instanceId, Collection<TokenChange> changes) {
+        OffsetDateTime ts = now();
+        for (TokenChange c : changes) {
+            WfToken t;
+            if (c.created()) {
+                t = new WfToken();
+                t.id = c.tokenId();
+                t.instanceId = instanceId;
+                t.nodeId = c.nodeId();
+                t.active = c.active();
+                t.createdAt = ts;
+                t.updatedAt = ts;
+                em.persist(t);
+            } else {
+                t = em.find(WfToken.class, c.tokenId());
+                if (t == null) throw new IllegalStateException("Token not found: " + c.tokenId());
+                t.nodeId = c.nodeId();
+                t.active = c.active();
+                t.updatedAt = ts;
+            }
+        }
+    }
+
  
     @Override
     public UUID createUserTask(UUID instanceId, UUID tokenId, String nodeId, String name) {
@@ -222,6 +327,9 @@ public class JpaEnginePersistence implements EnginePersistencePort {
         t.state = "COMPLETED";
         t.completedAt = now();
         taskRepo.save(t);
+        List<String> listedFor = new ArrayList<>(inboxRepo.unlist(taskId));
+        if (t.assignee != null) listedFor.add("U:" + t.assignee);
+        inboxEvents.publish(inboxEvent(InboxEvent.Type.COMPLETED, t), listedFor);
         
         // Publish task completed event
         WfInstance instance = instanceRepo.findById(t.instanceId).orElseThrow();
@@ -233,6 +341,50 @@ public class JpaEnginePersistence implements EnginePersistencePort {
         return !taskRepo.findByInstanceIdAndState(instanceId, "OPEN").isEmpty();
     }
 
+    @Override
+    public UUID createJob(UUID instanceId, UUID tokenId, String nodeId) {
+        UUID id = UUID.randomUUID();
+        OffsetDateTime ts = now();
+        WfJob j = new WfJob();
+        j.id = id;
+        j.instanceId = instanceId;
+        j.tokenId = tokenId;
+        j.nodeId = nodeId;
+        j.state = "PENDING";
+        j.dueAt = ts;
+        j.createdAt = ts;
+        j.updatedAt = ts;
+        em.persist(j);
+        return id;
+    }
+
+    @Override
+    public boolean hasOpenJobs(UUID instanceId) {
+        return jobRepo.existsByInstanceIdAndStateIn(instanceId, OPEN_JOB_STATES);
+    }
+
+    @Override
+    public List<JobView> claimJobs(String owner, int limit, int lockSeconds) {
+        List<JobView> out = new ArrayList<>();
+        for (WfJob j : jobRepo.claimBatch(owner, limit, lockSeconds)) {
+            out.add(new JobView(j.id, j.instanceId, j.tokenId, j.nodeId, j.attempts, j.lockedBy));
+        }
+        return out;
+    }
+
+    @Override
+    public void completeJob(UUID jobId, String owner) {
+        if (jobRepo.markDone(jobId, owner) == 0)
+            throw new IllegalStateException("Job is no longer claimed by " + owner + ": " + jobId);
+    }
+
+    @Override
+    public void failJob(UUID jobId, String owner, String error, OffsetDateTime retryAt) {
+        jobRepo.markFailed(jobId, owner, retryAt == null ? "FAILED" : "PENDING", error, retryAt);
+    }
+
+    private static final List<String> OPEN_JOB_STATES = List.of("PENDING", "RUNNING", "FAILED");
+
     private static OffsetDateTime now() {
         return OffsetDateTime.now();
     }
@@ -264,39 +416,67 @@ public class JpaEnginePersistence implements EnginePersistencePort {
                                String assignee, List<String> candidateUsers,
                                List<String> candidateGroups,
                                Integer priority, OffsetDateTime dueDate) {
-        UUID id = UUID.randomUUID();
-        WfTask t = new WfTask();
-        t.id = id;
-        t.instanceId = instanceId;
-        t.tokenId = tokenId;
-        t.nodeId = nodeId;
-        t.name = name;
-        t.state = "OPEN";
-        t.createdAt = now();
-        t.assignee = assignee;
+        return createUserTasks(List.of(new NewUserTask(instanceId, tokenId, nodeId, name, formKey, assignee,
+                candidateUsers, candidateGroups, priority, dueDate))).get(0);
+    }
 
-        taskRepo.save(t);
+    /**
+     * Tasks and candidates go through persist (new ids, no select-before-insert), and unassigned
+     * tasks are listed in wf_task_inbox by one statement, whose flush sends the whole batch.
+     */
+    @Override
+    public List<UUID> createUserTasks(List<NewUserTask> tasks) {
+        OffsetDateTime ts = now();
+        List<WfTask> created = new ArrayList<>(tasks.size());
+        List<List<String>> visibleTo = new ArrayList<>(tasks.size());
+        List<String> inboxed = new ArrayList<>();
+        for (NewUserTask n : tasks) {
+            WfTask t = new WfTask();
+            t.id = UUID.randomUUID();
+            t.instanceId = n.instanceId();
+            t.tokenId = n.tokenId();
+            t.nodeId = n.nodeId();
+            t.name = n.name();
+            t.formKey = n.formKey();
+            t.state = "OPEN";
+            t.createdAt = ts;
+            t.assignee = n.assignee();
+            t.priority = n.priority();       // claim-next ordering
+            t.dueDateTime = n.dueDate();
+            em.persist(t);
+
+            // save candidates
+            List<String> principals = new ArrayList<>();
+            for (String u : sanitize(n.candidateUsers())) principals.add(persistCandidate(t.id, "U", u));
+            for (String g : sanitize(n.candidateGroups())) principals.add(persistCandidate(t.id, "G", g));
+            if (!principals.isEmpty() && t.assignee == null) inboxed.add(t.id.toString());
+            visibleTo.add(t.assignee != null ? List.of("U:" + t.assignee) : principals);
+            created.add(t);
+        }
+        if (!inboxed.isEmpty()) inboxRepo.list(inboxed.toArray(String[]::new));
 
+        List<UUID> ids = new ArrayList<>(created.size());
+        for (int i = 0; i < created.size(); i++) {
+            WfTask t = created.get(i);
+            inboxEvents.publish(inboxEvent(InboxEvent.Type.CREATED, t), visibleTo.get(i));
 
-        // save candidates
-        List<WfTaskCandidate> rows = new ArrayList<>();
-        for (String u : sanitize(candidateUsers)) {
-            WfTaskCandidate c = new WfTaskCandidate();
-            c.taskId = id; c.type = "U"; c.candidate = u;
-            rows.add(c);
+            // Publish task created event
+            WfInstance instance = em.find(WfInstance.class, t.instanceId);
+            eventService.publishTaskCreatedEvent(t, instance, "USER_TASK", instance.variables);
+            ids.add(t.id);
         }
-        for (String g : sanitize(candidateGroups)) {
-            WfTaskCandidate c = new WfTaskCandidate();
-            c.taskId = id; c.type = "G"; c.candidate = g;
-            rows.add(c);
-        }
-        if (!rows.isEmpty()) taskCandidateRepo.saveAll(rows);
+        return ids;
+    }
 
-        // Publish task created event
-        WfInstance instance = instanceRepo.findById(instanceId).orElseThrow();
-        eventService.publishTaskCreatedEvent(t, instance, "USER_TASK", instance.variables);
+    private String persistCandidate(UUID taskId, String type, String candidate) {
+        WfTaskCandidate c = new WfTaskCandidate();
+        c.taskId = taskId; c.type = type; c.candidate = candidate;
+        em.persist(c);
+        return type + ":" + candidate;
+    }
 
-        return id;
+    private static InboxEvent inboxEvent(InboxEvent.Type type, WfTask t) {
+        return new InboxEvent(type, t.id, t.instanceId, t.nodeId, t.name, t.assignee, t.createdAt, t.dueDateTime);
     }
 
     private static List<String> sanitize(List<String> in) {
@@ -311,35 +491,13 @@ public class JpaEnginePersistence implements EnginePersistencePort {
             .registerModule(new JavaTimeModule())
             .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
-    /** Persist each entry as JSON text; DB generates jsonb for querying. */
-    private void upsertVariablesTable(UUID instanceId, Map<String, Object> vars) {
-        if (vars == null || vars.isEmpty()) return;
-
-        List<WfVariable> batch = new ArrayList<>(vars.size());
-        for (var e : vars.entrySet()) {
-            String key = e.getKey();
-            Object val = e.getValue();
-
-            WfVariable row = varRepo.findByInstanceIdAndKey(instanceId, key)
-                    .orElseGet(() -> {
-                        WfVariable v = new WfVariable();
-                        v.instanceId = instanceId;
-                        v.key = key;
-                        return v;
-                    });
-
-            try {
-                // Always store canonical JSON text (so strings become "..." etc.)
-                row.valueText = JSON.writeValueAsString(val);
-            } catch (Exception ex) {
-                throw new IllegalStateException("Failed to JSON-serialize variable '" + key + "'", ex);
-            }
-
-            batch.add(row);
+    /** Variables (or removed keys) as one JSON document; the database splits it into wf_variable rows. */
+    private static String toJsonText(Object value) {
+        try {
+            return JSON.writeValueAsString(value);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to JSON-serialize variables", ex);
         }
-
-        varRepo.saveAll(batch);     // @UpdateTimestamp sets updated_at
-        // varRepo.flush();          // optional
     }
 
 
@@ -0,0 +1,46 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfCommandLog;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface WfCommandLogRepo extends JpaRepository<WfCommandLog, String> {
+
+    // Claims the command ids not seen before and returns them. A concurrent transaction holding the
+    // same id makes this wait for its outcome instead of applying the command twice.
+    // Not @Modifying: the insert is read through RETURNING
+    @Query(value = """
+      insert into wf_command_log (command_id)
+      select distinct u.id from unnest(cast(:ids as text[])) as u(id)
+      on conflict (command_id) do nothing
+      returning command_id
+      """, nativeQuery = true)
+    List<String> claim(@Param("ids") String[] ids);
+
+    // Records the outcome of claimed commands, one round trip per batch
+    @Modifying
+    @Query(value = """
+      update wf_command_log l
+         set status = u.status, result = u.result, error = u.error, processed_at = now()
+        from unnest(cast(:ids as text[]), cast(:statuses as text[]), cast(:results as text[]), cast(:errors as text[]))
+             as u(id, status, result, error)
+       where l.command_id = u.id
+      """, nativeQuery = true)
+    int record(@Param("ids") String[] ids,
+               @Param("statuses") String[] statuses,
+               @Param("results") String[] results,
+               @Param("errors") String[] errors);
+
+    // Ids only have to outlive redeliveries and producer retries, not the commands' effects;
+    // a range scan on wf_command_log_processed_idx
+    @Transactional
+    @Modifying
+    @Query(value = "delete from wf_command_log where processed_at < now() - make_interval(hours => :hours)",
+            nativeQuery = true)
+    int prune(@Param("hours") int hours);
+}
@@ -1,7 +1,12 @@
 package com.miniflow.persist.repo;
 
 import com.miniflow.persist.entity.WfInstance;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.UUID;
@@ -9,4 +14,58 @@ import java.util.UUID;
 public interface WfInstanceRepo extends JpaRepository<WfInstance, UUID> {
 
     List<WfInstance> findByProcessId(String processId);
+
+    // Drops the removed keys (a JSON array), merges the changed ones (a JSON object) and bumps the
+    // version, unless another command already moved it past :expectedVersion. With :trackEvents
+    // (delta events) the same delta is folded into event_changed/event_removed for the next
+    // workflow event (see nextEvent)
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+      update wf_instance
+         set variables  = (variables - array(select jsonb_array_elements_text(cast(:removed as jsonb))))
+                          || cast(:changed as jsonb),
+             event_changed = case when cast(:trackEvents as boolean)
+                                  then (event_changed - array(select jsonb_array_elements_text(cast(:removed as jsonb))))
+                                       || cast(:changed as jsonb)
+                                  else event_changed end,
+             event_removed = case when cast(:trackEvents as boolean)
+                                  then array(select distinct k
+                                               from unnest(event_removed
+                                                           || array(select jsonb_array_elements_text(cast(:removed as jsonb)))) k
+                                              where not jsonb_exists(cast(:changed as jsonb), k))
+                                  else event_removed end,
+             version    = version + 1,
+             updated_at = now()
+       where id = :id
+         and version = :expectedVersion
+      """, nativeQuery = true)
+    int mergeVariables(@Param("id") UUID id,
+                       @Param("changed") String changedJson,
+                       @Param("removed") String removedJson,
+                       @Param("expectedVersion") long expectedVersion,
+                       @Param("trackEvents") boolean trackEvents);
+
+    // Advances the instance's event sequence and hands back the variable changes accumulated since
+    // the previous event, clearing them. One row: {seq, changed (JSON object), removed (JSON array)};
+    // none when the instance does not exist. Not @Modifying: the update is read through RETURNING
+    @Query(value = """
+      with prev as (
+        select id, event_changed, event_removed from wf_instance where id = :id for update
+      )
+      update wf_instance w
+         set event_seq = w.event_seq + 1,
+             event_changed = cast('{}' as jsonb),
+             event_removed = cast('{}' as text[])
+        from prev
+       where w.id = prev.id
+      returning w.event_seq, cast(prev.event_changed as text), cast(to_jsonb(prev.event_removed) as text)
+      """, nativeQuery = true)
+    List<Object[]> nextEvent(@Param("id") UUID id);
+
+    // Seq of a full-mode event: increasing but not contiguous per instance, which is fine since every
+    // full event is a snapshot. No row lock or update, and it reads no entity table, so the pending
+    // write-behind batch is not flushed for it
+    @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "COMMIT"))
+    @Query(value = "select nextval('wf_event_seq')", nativeQuery = true)
+    long nextEventSeq();
 }
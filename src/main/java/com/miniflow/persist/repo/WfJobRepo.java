@@ -0,0 +1,73 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface WfJobRepo extends JpaRepository<WfJob, UUID> {
+
+    boolean existsByInstanceIdAndStateIn(UUID instanceId, Collection<String> states);
+
+    // Claims due jobs (and jobs whose lock expired); concurrent pollers skip each other's rows.
+    // markDone/markFailed only match the current owner, so a worker whose lock expired and was
+    // reclaimed cannot finish or reset the new owner's run.
+    @Query(value = """
+      update wf_job j
+         set state        = 'RUNNING',
+             locked_by    = :owner,
+             locked_until = now() + make_interval(secs => :lockSeconds),
+             attempts     = j.attempts + 1,
+             updated_at   = now()
+       where j.id in (
+             select id
+               from wf_job
+              where (state = 'PENDING' and due_at <= now())
+                 or (state = 'RUNNING' and locked_until < now())
+              order by due_at
+              limit :limit
+              for update skip locked)
+      returning j.*
+      """, nativeQuery = true)
+    List<WfJob> claimBatch(@Param("owner") String owner,
+                           @Param("limit") int limit,
+                           @Param("lockSeconds") int lockSeconds);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query(value = """
+      update wf_job
+         set state        = 'DONE',
+             locked_by    = null,
+             locked_until = null,
+             updated_at   = now()
+       where id        = :jobId
+         and state     = 'RUNNING'
+         and locked_by = :owner
+      """, nativeQuery = true)
+    int markDone(@Param("jobId") UUID jobId, @Param("owner") String owner);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query(value = """
+      update wf_job
+         set state        = :state,
+             last_error   = :error,
+             due_at       = coalesce(:retryAt, due_at),
+             locked_by    = null,
+             locked_until = null,
+             updated_at   = now()
+       where id        = :jobId
+         and state     = 'RUNNING'
+         and locked_by = :owner
+      """, nativeQuery = true)
+    int markFailed(@Param("jobId") UUID jobId,
+                   @Param("owner") String owner,
+                   @Param("state") String state,
+                   @Param("error") String error,
+                   @Param("retryAt") OffsetDateTime retryAt);
+}
@@ -2,6 +2,22 @@ package com.miniflow.persist.repo;
 
 import com.miniflow.persist.entity.WfJoin;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.UUID;
 
 public interface WfJoinRepo extends JpaRepository<WfJoin, WfJoin.PK> {
+
+    // Records one arrival and returns the count in the current round; after reaching :expected it wraps to 1
+    @Query(value = """
+      insert into wf_join (instance_id, node_id, arrivals)
+      values (:instanceId, :nodeId, 1)
+      on conflict (instance_id, node_id) do update
+         set arrivals = wf_join.arrivals % :expected + 1
+      returning arrivals
+      """, nativeQuery = true)
+    int arrive(@Param("instanceId") UUID instanceId,
+               @Param("nodeId") String nodeId,
+               @Param("expected") int expected);
 }
@@ -0,0 +1,35 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface WfOutboxRepo extends JpaRepository<WfOutbox, Long> {
+
+    // One round trip for all events of a transaction; ids follow array order.
+    // Payloads travel as base64 text because text[] binds portably where bytea[] does not.
+    @Transactional
+    @Modifying
+    @Query(value = """
+      insert into wf_outbox (topic, msg_key, payload)
+      select u.topic, u.msg_key, decode(u.payload, 'base64')
+        from unnest(cast(:topics as text[]), cast(:keys as text[]), cast(:payloads as text[]))
+             with ordinality as u(topic, msg_key, payload, n)
+       order by u.n
+      """, nativeQuery = true)
+    int appendAll(@Param("topics") String[] topics,
+                  @Param("keys") String[] keys,
+                  @Param("payloads") String[] payloads);
+
+    // Only one relay drains at a time (cluster-wide), which keeps per-key order; released at commit
+    @Query(value = "select pg_try_advisory_xact_lock(:lockKey)", nativeQuery = true)
+    boolean tryRelayLock(@Param("lockKey") long lockKey);
+
+    @Query(value = "select * from wf_outbox order by id limit :limit", nativeQuery = true)
+    List<WfOutbox> findBatch(@Param("limit") int limit);
+}
@@ -0,0 +1,30 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfReportEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface WfReportEventRepo extends JpaRepository<WfReportEvent, String> {
+
+    // Records the event ids not projected before and returns them.
+    // Not @Modifying: the insert is read through RETURNING
+    @Query(value = """
+      insert into wf_report_event (event_id)
+      select distinct u.id from unnest(cast(:ids as text[])) as u(id)
+      on conflict (event_id) do nothing
+      returning event_id
+      """, nativeQuery = true)
+    List<String> claim(@Param("ids") String[] ids);
+
+    // Redeliveries come within minutes, so ids only have to outlive the consumer's retry window
+    @Transactional
+    @Modifying
+    @Query(value = "delete from wf_report_event where projected_at < now() - make_interval(hours => :hours)",
+            nativeQuery = true)
+    int prune(@Param("hours") int hours);
+}
@@ -0,0 +1,55 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfReportInstance;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.UUID;
+
+public interface WfReportInstanceRepo extends JpaRepository<WfReportInstance, UUID> {
+
+    Page<WfReportInstance> findByBusinessKeyOrderByInstanceIdAsc(String businessKey, Pageable pageable);
+
+    // an index range in wf_report_instance_status_id_idx order
+    Page<WfReportInstance> findByProcessIdAndStatusOrderByInstanceIdAsc(String processId, String status, Pageable pageable);
+
+    // One row per instance (the caller collapses a batch to the latest event of each); an event
+    // older than the applied one (lower seq) leaves the row alone, unless it is a snapshot at least
+    // as recent as the row: switching full to delta restarts the numbering below the wf_event_seq
+    // values full mode used. Timestamps are epoch millis.
+    @Modifying
+    @Query(value = """
+      with u as (
+        select * from unnest(cast(:ids as text[]), cast(:processIds as text[]), cast(:businessKeys as text[]),
+                             cast(:statuses as text[]), cast(:seqs as text[]), cast(:snapshots as text[]),
+                             cast(:createdMs as text[]), cast(:eventMs as text[]))
+               as u(id, process_id, business_key, status, seq, snapshot, created_ms, event_ms)
+      )
+      insert into wf_report_instance as r (instance_id, process_id, business_key, status, last_seq, created_at, updated_at)
+      select cast(u.id as uuid), u.process_id, u.business_key, u.status, cast(u.seq as bigint),
+             to_timestamp(cast(u.created_ms as bigint) / 1000.0), to_timestamp(cast(u.event_ms as bigint) / 1000.0)
+        from u
+      on conflict (instance_id) do update
+         set process_id   = coalesce(excluded.process_id, r.process_id),
+             business_key = coalesce(excluded.business_key, r.business_key),
+             status       = excluded.status,
+             last_seq     = excluded.last_seq,
+             created_at   = coalesce(r.created_at, excluded.created_at),
+             updated_at   = excluded.updated_at
+       where r.last_seq <= excluded.last_seq
+          or (excluded.updated_at >= r.updated_at
+              and exists (select 1 from u where cast(u.id as uuid) = r.instance_id and cast(u.snapshot as boolean)))
+      """, nativeQuery = true)
+    int upsertAll(@Param("ids") String[] ids,
+                  @Param("processIds") String[] processIds,
+                  @Param("businessKeys") String[] businessKeys,
+                  @Param("statuses") String[] statuses,
+                  @Param("seqs") String[] seqs,
+                  @Param("snapshots") String[] snapshots,
+                  @Param("createdMs") String[] createdMs,
+                  @Param("eventMs") String[] eventMs);
+}
@@ -0,0 +1,38 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfReportTaskCount;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+
+public interface WfReportTaskCountRepo extends JpaRepository<WfReportTaskCount, WfReportTaskCount.PK> {
+
+    Page<WfReportTaskCount> findByProcessIdOrderByNodeIdAscAssigneeAsc(String processId, Pageable pageable);
+
+    // wf_report_task_count_assignee_idx
+    Page<WfReportTaskCount> findByAssigneeOrderByProcessIdAscNodeIdAsc(String assignee, Pageable pageable);
+
+    // Adds signed deltas to the counters, one row per key. Callers pass keys in a fixed order, so
+    // projectors on different partitions lock shared counter rows in the same order
+    @Modifying
+    @Query(value = """
+      insert into wf_report_task_count as c (process_id, node_id, assignee, open_count, completed_count)
+      select u.process_id, u.node_id, u.assignee, cast(u.open_delta as bigint), cast(u.completed_delta as bigint)
+        from unnest(cast(:processIds as text[]), cast(:nodeIds as text[]), cast(:assignees as text[]),
+                    cast(:openDeltas as text[]), cast(:completedDeltas as text[]))
+             with ordinality as u(process_id, node_id, assignee, open_delta, completed_delta, n)
+       order by u.n
+      on conflict (process_id, node_id, assignee) do update
+         set open_count      = c.open_count + excluded.open_count,
+             completed_count = c.completed_count + excluded.completed_count
+      """, nativeQuery = true)
+    int addAll(@Param("processIds") String[] processIds,
+               @Param("nodeIds") String[] nodeIds,
+               @Param("assignees") String[] assignees,
+               @Param("openDeltas") String[] openDeltas,
+               @Param("completedDeltas") String[] completedDeltas);
+}
@@ -0,0 +1,37 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfReportTask;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.UUID;
+
+public interface WfReportTaskRepo extends JpaRepository<WfReportTask, UUID> {
+
+    // Writes the final state of each task of a batch (one row per task id). Timestamps are epoch millis
+    @Modifying
+    @Query(value = """
+      insert into wf_report_task as r (task_id, instance_id, process_id, node_id, assignee, state, created_at, completed_at)
+      select cast(u.task_id as uuid), cast(u.instance_id as uuid), u.process_id, u.node_id, u.assignee, u.state,
+             to_timestamp(cast(u.created_ms as bigint) / 1000.0), to_timestamp(cast(u.completed_ms as bigint) / 1000.0)
+        from unnest(cast(:taskIds as text[]), cast(:instanceIds as text[]), cast(:processIds as text[]),
+                    cast(:nodeIds as text[]), cast(:assignees as text[]), cast(:states as text[]),
+                    cast(:createdMs as text[]), cast(:completedMs as text[]))
+             as u(task_id, instance_id, process_id, node_id, assignee, state, created_ms, completed_ms)
+      on conflict (task_id) do update
+         set assignee     = excluded.assignee,
+             state        = excluded.state,
+             created_at   = coalesce(r.created_at, excluded.created_at),
+             completed_at = coalesce(excluded.completed_at, r.completed_at)
+      """, nativeQuery = true)
+    int upsertAll(@Param("taskIds") String[] taskIds,
+                  @Param("instanceIds") String[] instanceIds,
+                  @Param("processIds") String[] processIds,
+                  @Param("nodeIds") String[] nodeIds,
+                  @Param("assignees") String[] assignees,
+                  @Param("states") String[] states,
+                  @Param("createdMs") String[] createdMs,
+                  @Param("completedMs") String[] completedMs);
+}
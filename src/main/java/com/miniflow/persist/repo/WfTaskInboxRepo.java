@@ -0,0 +1,88 @@
+package com.miniflow.persist.repo;
+
+import com.miniflow.persist.entity.WfTaskInbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface WfTaskInboxRepo extends JpaRepository<WfTaskInbox, WfTaskInbox.PK> {
+
+    // Lists tasks under each of their candidates, if they are still OPEN and unassigned
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+      insert into wf_task_inbox (principal, task_id, instance_id, process_id, process_name,
+                                 node_id, name, business_key, form_key, priority,
+                                 created_at, due_date_time)
+      select c.type || ':' || c.candidate, t.id, t.instance_id, i.process_id, p.name,
+             t.node_id, t.name, i.business_key, t.form_key, t.priority,
+             t.created_at, t.due_date_time
+        from wf_task t
+        join wf_instance i       on i.id = t.instance_id
+        join wf_process p        on p.process_id = i.process_id
+        join wf_task_candidate c on c.task_id = t.id
+       where t.id = any(cast(:taskIds as uuid[]))
+         and t.state = 'OPEN'
+         and t.assignee is null
+      on conflict (principal, task_id) do nothing
+      """, nativeQuery = true)
+    int list(@Param("taskIds") String[] taskIds);
+
+    // Removes a task from every inbox and returns the principals it was listed under
+    @Query(value = "delete from wf_task_inbox where task_id = :taskId returning principal", nativeQuery = true)
+    List<String> unlist(@Param("taskId") UUID taskId);
+
+    // Claimable tasks for any of the caller's principals, oldest first, strictly after the cursor.
+    // Each principal contributes at most :limit rows from its own index range, so the cost depends
+    // on the page size and the number of groups, not on the queue length. Columns: TaskSummaryDTO
+    // fields in constructor order; the instance row is only joined when variables are requested.
+    @Query(value = """
+      select b.task_id, b.instance_id, b.process_id, b.process_name,
+             b.node_id, b.name,
+             cast(null as text), b.created_at, b.due_date_time, cast(null as timestamptz),
+             'OPEN', b.business_key,
+      """ + WfTaskRepo.PROJECTED_VARIABLES + """
+             , b.form_key
+        from (select distinct on (x.created_at, x.task_id) x.*
+                from unnest(cast(:principals as text[])) as pr(principal)
+                cross join lateral (
+                      select *
+                        from wf_task_inbox b
+                       where b.principal = pr.principal
+                         and (b.created_at, b.task_id) > (cast(:afterCreated as timestamptz), cast(:afterId as uuid))
+                       order by b.created_at, b.task_id
+                       limit :limit) x
+               order by x.created_at, x.task_id) b
+        left join wf_instance i on i.id = b.instance_id and cast(:varMode as text) <> 'NONE'
+       order by b.created_at, b.task_id
+       limit :limit
+      """, nativeQuery = true)
+    List<Object[]> findAfter(@Param("principals") String[] principals,
+                             @Param("afterCreated") String afterCreated,
+                             @Param("afterId") String afterId,
+                             @Param("limit") int limit,
+                             @Param("varMode") String varMode,
+                             @Param("varKeys") String[] varKeys);
+
+    // Hydrates task ids picked from ClaimableTaskIndex; ids no longer listed are simply missing.
+    // Same columns as findAfter, in no particular order.
+    @Query(value = """
+      select b.task_id, b.instance_id, b.process_id, b.process_name,
+             b.node_id, b.name,
+             cast(null as text), b.created_at, b.due_date_time, cast(null as timestamptz),
+             'OPEN', b.business_key,
+      """ + WfTaskRepo.PROJECTED_VARIABLES + """
+             , b.form_key
+        from (select distinct on (x.task_id) x.*
+                from wf_task_inbox x
+               where x.task_id = any(cast(:taskIds as uuid[]))
+               order by x.task_id) b
+        left join wf_instance i on i.id = b.instance_id and cast(:varMode as text) <> 'NONE'
+      """, nativeQuery = true)
+    List<Object[]> findByTaskIds(@Param("taskIds") String[] taskIds,
+                                 @Param("varMode") String varMode,
+                                 @Param("varKeys") String[] varKeys);
+}
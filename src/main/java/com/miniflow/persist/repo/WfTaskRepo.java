@@ -3,17 +3,21 @@ package com.miniflow.persist.repo;
 import com.miniflow.dto.TaskSummaryDTO;
 import com.miniflow.dto.TaskSummaryView;
 import com.miniflow.persist.entity.WfTask;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 
 import org.springframework.stereotype.Repository;
@@ -21,11 +25,56 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface WfTaskRepo extends JpaRepository<WfTask, UUID> {
 
+    // Variables column of the native summary queries, projected in SQL so unrequested keys never
+    // leave the database: :varMode 'ALL' (whole map), 'KEYS' (only :varKeys) or 'NONE' (null).
+    // Expects the instance row as alias i.
+    String PROJECTED_VARIABLES = """
+        case cast(:varMode as text)
+          when 'ALL'  then cast(i.variables as text)
+          when 'KEYS' then (select cast(coalesce(jsonb_object_agg(k.key, i.variables -> k.key), '{}') as text)
+                              from unnest(cast(:varKeys as text[])) as k(key)
+                             where i.variables -> k.key is not null)
+        end
+        """;
+
     // -------- Reads (derived) --------
     List<WfTask> findByAssigneeAndState(String assignee, String state);
     List<WfTask> findByInstanceIdAndState(UUID instanceId, String state);
     Optional<WfTask> findByIdAndState(UUID id, String state);
     List<WfTask> findByInstanceId(UUID instanceId);
+    List<WfTask> findByState(String state);
+    Optional<WfTask> findFirstByInstanceIdAndNodeIdAndStateOrderByCreatedAtAsc(UUID instanceId, String nodeId, String state);
+
+    // The oldest open task at :nodeId of an instance with :businessKey (and :processId, when given)
+    @Query(value = """
+      select t.id
+        from wf_instance i
+        join wf_task t on t.instance_id = i.id and t.state = 'OPEN' and t.node_id = :nodeId
+       where i.business_key = :businessKey
+         and (cast(:processId as text) is null or i.process_id = cast(:processId as text))
+       order by t.created_at
+       limit 1
+      """, nativeQuery = true)
+    List<UUID> findOpenTaskIdByBusinessKey(@Param("processId") String processId,
+                                           @Param("businessKey") String businessKey,
+                                           @Param("nodeId") String nodeId);
+
+    // Sets the due date on the task and on its inbox rows in one statement; 0 when the task does not exist
+    @Query(value = """
+      with task as (
+          update wf_task set due_date_time = :due where id = :taskId returning id
+      ), inbox as (
+          update wf_task_inbox b set due_date_time = :due from task t where b.task_id = t.id
+      )
+      select count(*) from task
+      """, nativeQuery = true)
+    int setDueDate(@Param("taskId") UUID taskId, @Param("due") OffsetDateTime due);
+
+    // Server-side cursor: rows are fetched in batches of 500 while the stream is consumed.
+    // Needs an open (read-only) transaction, and the caller should detach rows it is done with.
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("select t from WfTask t where t.state = :state order by t.createdAt, t.id")
+    Stream<WfTask> streamByState(@Param("state") String state);
 
     // -------- Updates (native SQL) --------
     @Modifying(clearAutomatically = true, flushAutomatically = true)
@@ -128,6 +177,38 @@ public interface WfTaskRepo extends JpaRepository<WfTask, UUID> {
             Pageable pageable
     );
 
+    // Keyset variant of findTaskSummariesByAssignee: rows strictly after (afterDue, afterId) in
+    // (due date, id) order, tasks without a due date last. No count and no offset, so every page
+    // is one index range scan on wf_task_assignee_due_idx. afterDue is timestamptz text
+    // ('-infinity' for the first page). Columns: TaskSummaryDTO fields in constructor order,
+    // variables as projected by PROJECTED_VARIABLES.
+    @Query(value = """
+        select t.id, t.instance_id, i.process_id, p.name,
+               t.node_id, t.name,
+               t.assignee, t.created_at, t.due_date_time, t.completed_at,
+               t.state, i.business_key,
+        """ + PROJECTED_VARIABLES + """
+               , t.form_key
+          from wf_task t
+          join wf_instance i on i.id = t.instance_id
+          join wf_process p  on p.process_id = i.process_id
+         where lower(t.assignee) = lower(:assignee)
+           and (cast(:state as text) is null or t.state = :state)
+           and (coalesce(t.due_date_time, cast('infinity' as timestamptz)), t.id)
+             > (cast(:afterDue as timestamptz), cast(:afterId as uuid))
+         order by coalesce(t.due_date_time, cast('infinity' as timestamptz)), t.id
+         limit :limit
+        """, nativeQuery = true)
+    List<Object[]> findTaskSummariesByAssigneeAfter(
+            @Param("assignee") String assignee,
+            @Param("state") String state,
+            @Param("afterDue") String afterDue,
+            @Param("afterId") String afterId,
+            @Param("limit") int limit,
+            @Param("varMode") String varMode,
+            @Param("varKeys") String[] varKeys
+    );
+
 
 
 
@@ -172,6 +253,99 @@ public interface WfTaskRepo extends JpaRepository<WfTask, UUID> {
   """)
         int claimIfUnassigned(@Param("taskId") UUID taskId, @Param("user") String user);
 
+        // Claim in one round trip: candidacy is checked in the update predicate, the task leaves the
+        // inbox and the joined summary comes back with an outcome (CLAIMED, NOT_OPEN, ASSIGNED,
+        // NOT_CANDIDATE, CONFLICT).
+        // No row means the task does not exist. Columns: outcome, current assignee, then the
+        // TaskSummaryDTO fields in constructor order (variables as JSON text), then the inbox
+        // principals the task was removed from (comma-separated).
+        @Query(value = """
+    with target as (
+        select t.id, t.state, t.assignee,
+               exists (select 1
+                         from wf_task_candidate c
+                        where c.task_id = t.id
+                          and ((c.type = 'U' and c.candidate = :user)
+                            or (c.type = 'G' and c.candidate = any(:groups)))) as allowed
+          from wf_task t
+         where t.id = :taskId
+    ), claimed as (
+        update wf_task t
+           set assignee = :user
+          from target x
+         where t.id = x.id
+           and x.allowed
+           and t.state = 'OPEN'
+           and t.assignee is null
+        returning t.*
+    ), unlisted as (
+        delete from wf_task_inbox b using claimed c where b.task_id = c.id
+        returning b.principal
+    )
+    select case
+             when c.id is not null     then 'CLAIMED'
+             when x.state <> 'OPEN'    then 'NOT_OPEN'
+             when x.assignee is not null then 'ASSIGNED'
+             when not x.allowed        then 'NOT_CANDIDATE'
+             else 'CONFLICT'
+           end,
+           x.assignee,
+           c.id, c.instance_id, i.process_id, p.name,
+           c.node_id, c.name,
+           c.assignee, c.created_at, c.due_date_time, c.completed_at,
+           c.state, i.business_key, cast(i.variables as text),
+           c.form_key,
+           (select string_agg(u.principal, ',') from unlisted u)
+      from target x
+      left join claimed c     on c.id = x.id
+      left join wf_instance i on i.id = c.instance_id
+      left join wf_process p  on p.process_id = i.process_id
+  """, nativeQuery = true)
+        List<Object[]> claimReturningSummary(@Param("taskId") UUID taskId,
+                                             @Param("user") String user,
+                                             @Param("groups") String[] groups);
+
+        // Work-queue pull: assigns the highest-priority, earliest-due task the caller may claim.
+        // Rows locked by concurrent callers are skipped rather than waited for, so callers never
+        // collide. Same columns as claimReturningSummary; no row means nothing is available.
+        @Query(value = """
+    with next as (
+        select t.id
+          from wf_task t
+         where t.state = 'OPEN'
+           and t.assignee is null
+           and exists (select 1
+                         from wf_task_candidate c
+                        where c.task_id = t.id
+                          and ((c.type = 'U' and c.candidate = :user)
+                            or (c.type = 'G' and c.candidate = any(:groups))))
+         order by t.priority desc nulls last, t.due_date_time asc nulls last, t.created_at
+         limit 1
+         for update of t skip locked
+    ), claimed as (
+        update wf_task t
+           set assignee = :user
+          from next n
+         where t.id = n.id
+        returning t.*
+    ), unlisted as (
+        delete from wf_task_inbox b using claimed c where b.task_id = c.id
+        returning b.principal
+    )
+    select 'CLAIMED', cast(null as text),
+           c.id, c.instance_id, i.process_id, p.name,
+           c.node_id, c.name,
+           c.assignee, c.created_at, c.due_date_time, c.completed_at,
+           c.state, i.business_key, cast(i.variables as text),
+           c.form_key,
+           (select string_agg(u.principal, ',') from unlisted u)
+      from claimed c
+      join wf_instance i on i.id = c.instance_id
+      join wf_process p  on p.process_id = i.process_id
+  """, nativeQuery = true)
+        List<Object[]> claimNextReturningSummary(@Param("user") String user,
+                                                 @Param("groups") String[] groups);
+
         // For returning a summary after claim
         @Query("""
     select new com.miniflow.dto.TaskSummaryDTO(
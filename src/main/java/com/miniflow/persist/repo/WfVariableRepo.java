@@ -2,6 +2,10 @@ package com.miniflow.persist.repo;
 
 import com.miniflow.persist.entity.*;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import java.util.*;
 import java.util.UUID;
 
@@ -9,4 +13,24 @@ public interface WfVariableRepo extends JpaRepository<WfVariable, WfVariable.PK>
 
     List<WfVariable> findByInstanceId(UUID instanceId);
     Optional<WfVariable> findByInstanceIdAndKey(UUID instanceId, String key);
+
+    // One statement for all changed variables (a JSON object); value_jsonb is regenerated by the database
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+      insert into wf_variable (instance_id, "key", value_text, updated_at)
+      select :instanceId, v.key, cast(v.value as text), now()
+        from jsonb_each(cast(:changed as jsonb)) v
+      on conflict (instance_id, "key") do update
+         set value_text = excluded.value_text,
+             updated_at = now()
+      """, nativeQuery = true)
+    int upsertAll(@Param("instanceId") UUID instanceId, @Param("changed") String changedJson);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+      delete from wf_variable
+       where instance_id = :instanceId
+         and "key" in (select jsonb_array_elements_text(cast(:keys as jsonb)))
+      """, nativeQuery = true)
+    int deleteKeys(@Param("instanceId") UUID instanceId, @Param("keys") String keysJson);
 }
@@ -31,6 +31,25 @@ public class ApiDtos {
             String tokenAt,
             boolean completed,
             Map<String, Object> variables) {}
+    public record BulkStartEntry(
+            String businessKey,
+            Map<String, Object> variables) {}
+    /** {@code error} is set when a chunk failed; the instances listed were still started and committed. */
+    public record BulkStartResponse(
+            String processId,
+            int started,
+            int completed,
+            List<String> instanceIds,
+            String error) {}
+    public record BulkCompleteEntry(
+            String taskId,
+            Map<String, Object> variables) {}
+    public record BulkCompleteResult(
+            String taskId,
+            String instanceId,
+            String status,
+            boolean instanceCompleted,
+            String error) {}
     public record TaskView(
             String id,
             String instanceId,
@@ -1,10 +1,10 @@
 package com.miniflow.rest;
 
+import com.miniflow.avro.InstanceEvent;
 import com.miniflow.persist.entity.WfInstance;
 import com.miniflow.persist.entity.WfTask;
 import com.miniflow.service.WorkflowAvroEventService;
 import com.miniflow.util.AvroSerializationUtil;
-import org.apache.avro.specific.SpecificRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -136,54 +136,30 @@ public class AvroTestController {
     @GetMapping("/serialize-test")
     public ResponseEntity<Map<String, Object>> testSerialization() {
         try {
-            // Create a test record using reflection
-            Class<?> recordClass = Class.forName("com.miniflow.events.WorkflowInstanceEvent");
-            
-            // Get the newBuilder method
-            Object builder = recordClass.getMethod("newBuilder").invoke(null);
-            
-            // Set the parameters on the builder
-            Map<String, Object> params = new HashMap<>();
-            params.put("eventId", UUID.randomUUID().toString());
-            params.put("eventType", "TEST_EVENT");
-            params.put("timestamp", Instant.now().toEpochMilli());
-            params.put("instanceId", UUID.randomUUID().toString());
-            params.put("processId", "test-process");
-            params.put("businessKey", "test-business-key");
-            params.put("status", "ACTIVE");
-            
-            Map<CharSequence, Object> variables = new HashMap<>();
+            Map<String, String> variables = new HashMap<>();
             variables.put("stringVar", "test-value");
-            variables.put("intVar", 123);
-            variables.put("boolVar", true);
-            variables.put("doubleVar", 123.45);
-            params.put("variables", variables);
-            
-            // Set the parameters on the builder
-            for (Map.Entry<String, Object> entry : params.entrySet()) {
-                String methodName = "set" + entry.getKey().substring(0, 1).toUpperCase() + entry.getKey().substring(1);
-                
-                // Find the appropriate setter method
-                for (java.lang.reflect.Method method : builder.getClass().getMethods()) {
-                    if (method.getName().equals(methodName) && method.getParameterCount() == 1) {
-                        method.invoke(builder, entry.getValue());
-                        break;
-                    }
-                }
-            }
-            
-            // Build the record
-            SpecificRecord record = (SpecificRecord) builder.getClass().getMethod("build").invoke(builder);
-            
-            // Serialize the record
+            variables.put("intVar", "123");
+            variables.put("boolVar", "true");
+            variables.put("doubleVar", "123.45");
+
+            InstanceEvent record = InstanceEvent.newBuilder()
+                    .setEventId(UUID.randomUUID().toString())
+                    .setEventType("TEST_EVENT")
+                    .setTimestamp(Instant.now().toEpochMilli())
+                    .setInstanceId(UUID.randomUUID().toString())
+                    .setProcessId("test-process")
+                    .setBusinessKey("test-business-key")
+                    .setStatus("ACTIVE")
+                    .setVariables(variables)
+                    .build();
+
             ByteBuffer serialized = AvroSerializationUtil.serializeToByteBuffer(record);
-            
-            // Deserialize the record using reflection
-            Object deserialized = recordClass.getMethod("fromByteBuffer", ByteBuffer.class).invoke(null, serialized);
+            InstanceEvent deserialized = AvroSerializationUtil.deserializeRecord(serialized, InstanceEvent.class);
             
             // Return success response
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
+            response.put("serializedBytes", serialized.remaining());
             response.put("originalRecord", record.toString());
             response.put("deserializedRecord", deserialized.toString());
             response.put("recordsEqual", record.equals(deserialized));
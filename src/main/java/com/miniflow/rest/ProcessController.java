@@ -4,19 +4,27 @@
 package com.miniflow.rest;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.miniflow.dto.KeysetSlice;
 import com.miniflow.dto.TaskSummaryDTO;
+import com.miniflow.dto.VariableProjection;
 import com.miniflow.dto.TaskSummaryView;
 import com.miniflow.service.TaskQueryService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -26,6 +34,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.miniflow.core.DbBackedEngine;
 import com.miniflow.core.EngineModel.Node;
@@ -41,6 +50,9 @@ import com.miniflow.persist.repo.WfTaskRepo;
 public class ProcessController {
 
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final ObjectWriter NDJSON_WRITER = new ObjectMapper().writer().withRootValueSeparator("\n");
+
     private final TaskQueryService svc;
     private final DbBackedEngine engine;
     private final WfTaskRepo taskRepo;
@@ -88,6 +100,36 @@ public class ProcessController {
         return new ApiDtos.StartResponse(v.id.toString(), v.processId, v.businessKey, v.tokenAt(), v.completed, v.variables);
     }
 
+    /**
+     * Starts one instance per entry; instanceIds are returned in entry order. If a later chunk
+     * fails, the response is a 500 that still lists the instances of the committed chunks (always
+     * the first {@code started} entries), so a retry can resume after them.
+     */
+    @PostMapping("/processes/{processId}/start-bulk")
+    public ResponseEntity<ApiDtos.BulkStartResponse> startBulk(
+            @PathVariable("processId") String processId,
+            @RequestBody List<ApiDtos.BulkStartEntry> entries) {
+        try {
+            List<DbBackedEngine.StartResult> results = engine.startAll(processId, entries.stream()
+                    .map(e -> new DbBackedEngine.StartRequest(e.businessKey(), e.variables() == null ? Map.of() : e.variables())));
+            return ResponseEntity.ok(bulkStartResponse(processId, results, null));
+        } catch (DbBackedEngine.BulkStartException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(bulkStartResponse(processId, e.started, String.valueOf(e.getCause().getMessage())));
+        }
+    }
+
+    private static ApiDtos.BulkStartResponse bulkStartResponse(String processId, List<DbBackedEngine.StartResult> results,
+                                                               String error) {
+        List<String> ids = new ArrayList<>(results.size());
+        int completed = 0;
+        for (DbBackedEngine.StartResult r : results) {
+            ids.add(r.instanceId().toString());
+            if (r.completed()) completed++;
+        }
+        return new ApiDtos.BulkStartResponse(processId, results.size(), completed, ids, error);
+    }
+
     @GetMapping("/instances/{instanceId}")
     public ApiDtos.InstanceView instance(@PathVariable("instanceId") String instanceId) {
         DbBackedEngine.InstanceView v = engine.instance(UUID.fromString(instanceId)).orElseThrow();
@@ -113,6 +155,23 @@ public class ProcessController {
         return new ApiDtos.InstanceView(v.id.toString(), v.processId, v.businessKey, v.tokenAt(), v.completed, v.variables);
     }
     
+    /** Completes many tasks in one transaction; one result per distinct taskId, in request order. */
+    @PostMapping("/tasks/complete-bulk")
+    public List<ApiDtos.BulkCompleteResult> completeBulk(@RequestBody List<ApiDtos.BulkCompleteEntry> entries) {
+        List<DbBackedEngine.TaskCompletion> completions = entries.stream()
+                .map(e -> new DbBackedEngine.TaskCompletion(UUID.fromString(e.taskId()),
+                        e.variables() == null ? Map.of() : e.variables()))
+                .toList();
+        return engine.completeUserTasks(completions).stream()
+                .map(r -> new ApiDtos.BulkCompleteResult(
+                        r.taskId().toString(),
+                        r.instanceId() == null ? null : r.instanceId().toString(),
+                        r.status(),
+                        r.instanceCompleted(),
+                        r.error()))
+                .toList();
+    }
+
     /**
      * Set the due date for a task
      * @param taskId The ID of the task
@@ -146,28 +205,76 @@ public class ProcessController {
                     .stream().map(ApiDtos::from).toList();
         }
         // default: all OPEN tasks
-        return taskRepo.findAll().stream()
-                .filter(t -> "OPEN".equals(t.state))
-                .map(ApiDtos::from).toList();
+        return taskRepo.findByState("OPEN")
+                .stream().map(ApiDtos::from).toList();
+    }
+
+    /**
+     * All OPEN tasks as newline-delimited JSON ({@code Accept: application/x-ndjson}), streamed
+     * from a database cursor: the first lines are sent immediately and nothing is buffered.
+     */
+    @GetMapping(value = "/tasks", produces = NDJSON, params = {"!assignee", "!candidateUser"})
+    public StreamingResponseBody streamOpenTasks() {
+        return out -> {
+            SequenceWriter lines = NDJSON_WRITER.writeValues(out);
+            int[] n = {0};
+            svc.streamByState("OPEN", t -> {
+                try {
+                    lines.write(ApiDtos.from(t));
+                    if (++n[0] == 1 || n[0] % 200 == 0) lines.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            lines.flush();
+            if (n[0] > 0) out.write('\n');
+        };
     }
 
 
+    /**
+     * {@code vars}: comma-separated variable keys to include, {@code -} for none; all by default.
+     * Trims the response only: the query still reads the whole variable map.
+     */
     @GetMapping("/tasks/assignee-view")
     public Page<TaskSummaryView> listByAssignee(
             @RequestParam String assignee,
             @RequestParam(required = false) String state,
             @PageableDefault(size = 20, sort = "dueDateTime", direction = Sort.Direction.ASC)
-            Pageable pageable) {
-        return taskRepo.findByAssignee(assignee, state, pageable);
+            Pageable pageable,
+            @RequestParam(required = false) String vars) {
+        VariableProjection p = VariableProjection.parse(vars, VariableProjection.ALL);
+        return taskRepo.findByAssignee(assignee, state, pageable).map(p::apply);
     }
 
+    /**
+     * {@code vars}: comma-separated variable keys to include, {@code -} for none; all by default.
+     * Trims the response only: the query still reads the whole variable map.
+     */
     @GetMapping("/tasks/assignee")
     public Page<TaskSummaryDTO> listByAssigneeAndGroup(
             @RequestParam String assignee,
             @RequestParam(required = false) String state,
             @PageableDefault(size = 20, sort = "dueDateTime", direction = Sort.Direction.ASC)
-            Pageable pageable) {
-        return taskRepo.findTaskSummariesByAssignee(assignee, state, pageable);
+            Pageable pageable,
+            @RequestParam(required = false) String vars) {
+        VariableProjection p = VariableProjection.parse(vars, VariableProjection.ALL);
+        return taskRepo.findTaskSummariesByAssignee(assignee, state, pageable).map(p::apply);
+    }
+
+    /**
+     * Keyset variant of /tasks/assignee ordered by due date: pass nextCursor to fetch the next page.
+     * {@code vars}: comma-separated variable keys to include, {@code *} for all; none by default.
+     */
+    @GetMapping("/tasks/assignee/keyset")
+    public KeysetSlice<TaskSummaryDTO> listByAssigneeKeyset(
+            @RequestParam String assignee,
+            @RequestParam(required = false) String state,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String vars) {
+        return svc.byAssigneeAfter(assignee, state, cursor, size,
+                VariableProjection.parse(vars, VariableProjection.NONE));
     }
 
 }
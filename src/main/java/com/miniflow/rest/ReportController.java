@@ -0,0 +1,49 @@
+package com.miniflow.rest;
+
+import com.miniflow.persist.entity.WfReportInstance;
+import com.miniflow.persist.entity.WfReportTaskCount;
+import com.miniflow.persist.repo.WfReportInstanceRepo;
+import com.miniflow.persist.repo.WfReportTaskCountRepo;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Dashboard queries, answered from the reporting read model (wf_report_*) that
+ * WorkflowEventProjector keeps current; never from the engine's runtime tables. Figures lag the
+ * engine by the outbox relay and projection delay. Lists are paged ({@code page}, {@code size}),
+ * each in an order an index delivers.
+ */
+@RestController
+@RequestMapping("/api/reports")
+public class ReportController {
+
+    private final WfReportInstanceRepo instances;
+    private final WfReportTaskCountRepo taskCounts;
+
+    public ReportController(WfReportInstanceRepo instances, WfReportTaskCountRepo taskCounts) {
+        this.instances = instances;
+        this.taskCounts = taskCounts;
+    }
+
+    @GetMapping("/instances")
+    public Page<WfReportInstance> instances(@RequestParam(required = false) String businessKey,
+                                            @RequestParam(required = false) String processId,
+                                            @RequestParam(defaultValue = "RUNNING") String status,
+                                            @PageableDefault(size = 50) Pageable pageable) {
+        if (businessKey != null) return instances.findByBusinessKeyOrderByInstanceIdAsc(businessKey, pageable);
+        if (processId == null) throw new IllegalArgumentException("businessKey or processId is required");
+        return instances.findByProcessIdAndStatusOrderByInstanceIdAsc(processId, status, pageable);
+    }
+
+    /** Open and completed task counts per node and assignee ('' = unassigned). */
+    @GetMapping("/task-counts")
+    public Page<WfReportTaskCount> taskCounts(@RequestParam(required = false) String processId,
+                                              @RequestParam(required = false) String assignee,
+                                              @PageableDefault(size = 100) Pageable pageable) {
+        if (processId != null) return taskCounts.findByProcessIdOrderByNodeIdAscAssigneeAsc(processId, pageable);
+        if (assignee == null) throw new IllegalArgumentException("processId or assignee is required");
+        return taskCounts.findByAssigneeOrderByProcessIdAscNodeIdAsc(assignee, pageable);
+    }
+}
@@ -4,13 +4,18 @@ package com.miniflow.rest;
 import java.util.*;
 import java.util.stream.Stream;
 
+import com.miniflow.dto.KeysetSlice;
 import com.miniflow.dto.TaskSummaryDTO;
+import com.miniflow.dto.VariableProjection;
 import com.miniflow.service.Caller;
 import com.miniflow.service.TaskClaimService;
 import org.springframework.data.domain.*;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/tasks")
@@ -21,10 +26,41 @@ public class TaskClaimController {
         this.svc = svc;
     }
 
+    /**
+     * {@code vars}: comma-separated variable keys to include, {@code -} for none; all by default.
+     * Projected in SQL when the claimable index answers; otherwise the response is trimmed after
+     * the query has read the whole variable map.
+     */
     @GetMapping("/claimable")
-    public Page<TaskSummaryDTO> claimables(@AuthenticationPrincipal Jwt jwt, Pageable pageable) {
+    public Page<TaskSummaryDTO> claimables(@AuthenticationPrincipal Jwt jwt, Pageable pageable,
+                                           @RequestParam(required = false) String vars) {
         var c = Caller.fromJwt(jwt);
-        return svc.listClaimables(c.user(), c.groups(), pageable);
+        return svc.listClaimables(c.user(), c.groups(), pageable,
+                VariableProjection.parse(vars, VariableProjection.ALL));
+    }
+
+    /**
+     * Keyset variant of /claimable: pass the previous response's nextCursor to continue.
+     * {@code vars}: comma-separated variable keys to include, {@code *} for all; none by default.
+     */
+    @GetMapping("/claimable/keyset")
+    public KeysetSlice<TaskSummaryDTO> claimablesKeyset(@AuthenticationPrincipal Jwt jwt,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(defaultValue = "20") int size,
+                                                        @RequestParam(required = false) String vars) {
+        var c = Caller.fromJwt(jwt);
+        return svc.listClaimablesAfter(c.user(), c.groups(), cursor, size,
+                VariableProjection.parse(vars, VariableProjection.NONE));
+    }
+
+    /**
+     * Inbox changes for the caller (CREATED, CLAIMED, COMPLETED events with the task summary),
+     * instead of polling /claimable. Each event's id is the task id.
+     */
+    @GetMapping(value = "/inbox/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter inboxStream(@AuthenticationPrincipal Jwt jwt) {
+        var c = Caller.fromJwt(jwt);
+        return svc.subscribeInbox(c.user(), c.groups());
     }
 
     @PostMapping("/{taskId}/claim")
@@ -33,6 +69,15 @@ public class TaskClaimController {
         return svc.claim(taskId, c.user(), c.groups());
     }
 
+    /** Pulls the next task for the caller (priority, then due date); 204 when the queue is empty. */
+    @PostMapping("/claim-next")
+    public ResponseEntity<TaskSummaryDTO> claimNext(@AuthenticationPrincipal Jwt jwt) {
+        var c = Caller.fromJwt(jwt);
+        return svc.claimNext(c.user(), c.groups())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
     public static class ClaimRequest {
         public String user;
         public List<String> groups;
@@ -0,0 +1,274 @@
+package com.miniflow.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Node-local index of claimable tasks: for every inbox principal ({@code U:user}, {@code G:group})
+ * the ids of its OPEN unassigned tasks, ordered by (created_at, id).
+ * <p>
+ * Loaded from wf_task_inbox at startup and kept current by the {@code wf_task_inbox} NOTIFY feed
+ * (V8), which every node receives after each commit, whichever node made the change. Writers only
+ * publish it when their session sets {@code miniflow.inbox_notify = 'on'} (V14), so every node's
+ * pool must set it once any node runs the index; without it on its own connection the index never
+ * becomes ready. A listener thread holds one dedicated connection; when it drops, the index
+ * reports not ready (callers fall back to SQL) until it has reconnected and reloaded.
+ * <p>
+ * Keyset reads cost the page size. The offset-based {@link #page} and {@link #count} are bounded
+ * too: offsets beyond {@code max-offset} are left to SQL (see {@link #servesOffset}), and a caller
+ * with several principals only gets an exact total while their lists hold at most
+ * {@code exact-count-limit} entries together.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "miniflow.inbox.index", name = "enabled", havingValue = "true")
+public class ClaimableTaskIndex {
+
+    /** Sort key matching the SQL order: created_at (epoch micros), then id as Postgres compares uuids. */
+    public record Key(long createdMicros, UUID taskId) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key o) {
+            int c = Long.compare(createdMicros, o.createdMicros);
+            if (c != 0) return c;
+            c = Long.compareUnsigned(taskId.getMostSignificantBits(), o.taskId.getMostSignificantBits());
+            return c != 0 ? c : Long.compareUnsigned(taskId.getLeastSignificantBits(), o.taskId.getLeastSignificantBits());
+        }
+
+        public OffsetDateTime createdAt() {
+            return Instant.ofEpochSecond(Math.floorDiv(createdMicros, 1_000_000L),
+                    Math.floorMod(createdMicros, 1_000_000L) * 1000L).atOffset(ZoneOffset.UTC);
+        }
+
+        public static long micros(OffsetDateTime t) {
+            Instant i = t.toInstant();
+            return Math.addExact(Math.multiplyExact(i.getEpochSecond(), 1_000_000L), i.getNano() / 1000L);
+        }
+    }
+
+    private static final String CHANNEL = "wf_task_inbox";
+
+    private final DataSource dataSource;
+    private final Map<String, Entries> byPrincipal = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+    private volatile boolean running;
+    private Thread listener;
+
+    @Value("${miniflow.inbox.index.poll-ms:500}")
+    private int pollMs = 500;
+    @Value("${miniflow.inbox.index.reconnect-ms:5000}")
+    private long reconnectMs = 5000;
+    @Value("${miniflow.inbox.index.max-offset:1000}")
+    long maxOffset = 1000;
+    @Value("${miniflow.inbox.index.exact-count-limit:10000}")
+    long exactCountLimit = 10_000;
+
+    // a principal's tasks with their number: ConcurrentSkipListSet.size() walks the whole set
+    private static final class Entries {
+        final NavigableSet<Key> keys = new ConcurrentSkipListSet<>();
+        final AtomicInteger size = new AtomicInteger();
+    }
+
+    public ClaimableTaskIndex(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        listener = new Thread(this::listen, "miniflow-inbox-index");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listener != null) listener.interrupt();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Up to {@code limit} task keys visible to any of {@code principals}, strictly after {@code after}. */
+    public List<Key> after(Collection<String> principals, Key after, int limit) {
+        List<Key> out = new ArrayList<>(Math.min(limit, 256));
+        Iterator<Key> it = merged(principals, after);
+        while (out.size() < limit && it.hasNext()) out.add(it.next());
+        return out;
+    }
+
+    /** True when {@link #page} should answer {@code offset}; deeper pages are cheaper in SQL. */
+    public boolean servesOffset(long offset) {
+        return offset <= maxOffset;
+    }
+
+    /**
+     * Offset-based page over the same order, for the Page-shaped API; skipping happens in memory,
+     * so callers keep {@code offset} within {@link #servesOffset}.
+     */
+    public List<Key> page(Collection<String> principals, long offset, int limit) {
+        Iterator<Key> it = merged(principals, null);
+        for (long i = 0; i < offset && it.hasNext(); i++) it.next();
+        List<Key> out = new ArrayList<>(Math.min(limit, 256));
+        while (out.size() < limit && it.hasNext()) out.add(it.next());
+        return out;
+    }
+
+    /**
+     * Tasks visible to {@code principals}. Exact for a single principal, or while the principals'
+     * lists hold at most {@code exact-count-limit} entries together; beyond that the sum of the list
+     * sizes, an upper bound since a task offered to several of them is listed under each.
+     */
+    public long count(Collection<String> principals) {
+        Set<String> distinct = Set.copyOf(principals);
+        long sum = 0;
+        for (String p : distinct) {
+            Entries e = byPrincipal.get(p);
+            if (e != null) sum += e.size.get();
+        }
+        if (distinct.size() <= 1 || sum > exactCountLimit) return sum;
+        long n = 0;
+        for (Iterator<Key> it = merged(distinct, null); it.hasNext(); it.next()) n++;
+        return n;
+    }
+
+    // k-way merge of the principals' sets in key order, skipping tasks listed under several of them
+    private Iterator<Key> merged(Collection<String> principals, Key after) {
+        record Head(Key key, Iterator<Key> rest) {}
+        PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> a.key.compareTo(b.key));
+        for (String p : Set.copyOf(principals)) {
+            Entries e = byPrincipal.get(p);
+            if (e == null) continue;
+            NavigableSet<Key> s = e.keys;
+            Iterator<Key> it = (after == null ? s : s.tailSet(after, false)).iterator();
+            if (it.hasNext()) heads.add(new Head(it.next(), it));
+        }
+        return new Iterator<>() {
+            Key last;
+
+            @Override
+            public boolean hasNext() {
+                while (!heads.isEmpty() && heads.peek().key.equals(last)) advance();
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Key next() {
+                if (!hasNext()) throw new java.util.NoSuchElementException();
+                last = heads.peek().key;
+                advance();
+                return last;
+            }
+
+            private void advance() {
+                Head h = heads.poll();
+                if (h.rest.hasNext()) heads.add(new Head(h.rest.next(), h.rest));
+            }
+        };
+    }
+
+    void apply(char op, String principal, Key key) {
+        if (op == 'I') {
+            Entries e = byPrincipal.computeIfAbsent(principal, k -> new Entries());
+            if (e.keys.add(key)) e.size.incrementAndGet();
+        } else {
+            byPrincipal.computeIfPresent(principal, (k, e) -> {
+                if (e.keys.remove(key)) e.size.decrementAndGet();
+                return e.keys.isEmpty() ? null : e;
+            });
+        }
+    }
+
+    // payload written by wf_task_inbox_notify(): op|task_id|created micros|principal
+    void apply(String payload) {
+        String[] f = payload.split("\\|", 4);
+        apply(f[0].charAt(0), f[3], new Key(Long.parseLong(f[2]), UUID.fromString(f[1])));
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection con = dataSource.getConnection()) {
+                PGConnection pg = con.unwrap(PGConnection.class);
+                try (Statement st = con.createStatement()) {
+                    if (!notifyEnabled(st)) {
+                        log.warn("Claimable task index disabled: writers do not publish {} "
+                                + "(set miniflow.inbox_notify = 'on' in the connection-init-sql)", CHANNEL);
+                        return;
+                    }
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                load(con); // after LISTEN, so changes committed during the load are replayed on top
+                ready = true;
+                log.info("Claimable task index loaded: {} principals", byPrincipal.size());
+                while (running) {
+                    PGNotification[] batch = pg.getNotifications(pollMs);
+                    if (batch == null) continue;
+                    for (PGNotification n : batch) {
+                        if (CHANNEL.equals(n.getName())) apply(n.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) return;
+                log.warn("Claimable task index lost its change feed, falling back to SQL: {}", e.toString());
+            } finally {
+                ready = false;
+            }
+            try {
+                Thread.sleep(reconnectMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static boolean notifyEnabled(Statement st) throws Exception {
+        try (ResultSet rs = st.executeQuery("select current_setting('miniflow.inbox_notify', true)")) {
+            return rs.next() && "on".equals(rs.getString(1));
+        }
+    }
+
+    private void load(Connection con) throws Exception {
+        byPrincipal.clear();
+        con.setAutoCommit(false);
+        try (Statement st = con.createStatement()) {
+            st.setFetchSize(5000);
+            try (ResultSet rs = st.executeQuery(
+                    "select principal, task_id, (extract(epoch from created_at) * 1000000)::bigint from wf_task_inbox")) {
+                while (rs.next()) {
+                    apply('I', rs.getString(1), new Key(rs.getLong(3), rs.getObject(2, UUID.class)));
+                }
+            }
+            con.commit();
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+}
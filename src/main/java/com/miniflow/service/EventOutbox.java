@@ -0,0 +1,74 @@
+package com.miniflow.service;
+
+import com.miniflow.persist.repo.WfOutboxRepo;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Collects the events of the current transaction and writes them to wf_outbox with one insert
+ * just before it commits, so they become visible to {@link OutboxRelay} exactly when (and only if)
+ * the engine state they describe does. Outside a transaction each event is written at once.
+ */
+@Component
+public class EventOutbox {
+
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
+    private record Entry(String topic, String key, byte[] payload) {}
+
+    private final WfOutboxRepo repo;
+
+    public EventOutbox(WfOutboxRepo repo) {
+        this.repo = repo;
+    }
+
+    public void append(String topic, String key, byte[] payload) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(List.of(new Entry(topic, key, payload)));
+            return;
+        }
+        pending().add(new Entry(topic, key, payload));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Entry> pending() {
+        List<Entry> entries = (List<Entry>) TransactionSynchronizationManager.getResource(this);
+        if (entries != null) return entries;
+        List<Entry> fresh = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, fresh);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                write(fresh);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(EventOutbox.this);
+            }
+        });
+        return fresh;
+    }
+
+    private void write(List<Entry> entries) {
+        Base64.Encoder b64 = Base64.getEncoder();
+        for (int from = 0; from < entries.size(); from += MAX_ROWS_PER_INSERT) {
+            List<Entry> chunk = entries.subList(from, Math.min(entries.size(), from + MAX_ROWS_PER_INSERT));
+            String[] topics = new String[chunk.size()];
+            String[] keys = new String[chunk.size()];
+            String[] payloads = new String[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                Entry e = chunk.get(i);
+                topics[i] = e.topic();
+                keys[i] = e.key();
+                payloads[i] = b64.encodeToString(e.payload());
+            }
+            repo.appendAll(topics, keys, payloads);
+        }
+    }
+}
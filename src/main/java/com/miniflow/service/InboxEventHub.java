@@ -0,0 +1,136 @@
+package com.miniflow.service;
+
+import com.miniflow.dto.InboxEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes inbox changes to Server-Sent Event subscribers on this node.
+ * <p>
+ * Subscribers are indexed by principal ({@code U:user}, {@code G:group}, as in wf_task_inbox), so an
+ * event costs one map lookup per principal that can see the task. Events raised inside a
+ * transaction are sent after it commits and dropped on rollback. Sending happens on one dispatcher
+ * thread, which also writes a heartbeat comment so idle connections survive proxies.
+ */
+@Slf4j
+@Component
+public class InboxEventHub {
+
+    private final Map<String, Set<SseEmitter>> byPrincipal = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService dispatcher;
+    private final long timeoutMs;
+
+    public InboxEventHub(@Value("${miniflow.inbox.sse-timeout-ms:1800000}") long timeoutMs,
+                         @Value("${miniflow.inbox.heartbeat-ms:25000}") long heartbeatMs) {
+        this.timeoutMs = timeoutMs;
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "miniflow-inbox-sse");
+            t.setDaemon(true);
+            return t;
+        });
+        if (heartbeatMs > 0) {
+            dispatcher.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+        for (Set<SseEmitter> subs : byPrincipal.values()) subs.forEach(SseEmitter::complete);
+    }
+
+    /** Opens a stream that receives events for any of {@code principals}. */
+    public SseEmitter subscribe(Collection<String> principals) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        List<String> keys = List.copyOf(principals);
+        for (String p : keys) byPrincipal.computeIfAbsent(p, k -> ConcurrentHashMap.newKeySet()).add(emitter);
+        Runnable remove = () -> unsubscribe(emitter, keys);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+
+    /** Sends {@code event} to every subscriber of {@code principals}, after the current transaction commits. */
+    public void publish(InboxEvent event, Collection<String> principals) {
+        if (principals.isEmpty() || byPrincipal.isEmpty()) return;
+        List<String> keys = List.copyOf(principals);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(event, keys);
+                }
+            });
+        } else {
+            dispatch(event, keys);
+        }
+    }
+
+    int subscriberCount(String principal) {
+        Set<SseEmitter> subs = byPrincipal.get(principal);
+        return subs == null ? 0 : subs.size();
+    }
+
+    // one delivery per subscriber even when several of its principals match
+    Set<SseEmitter> recipients(Collection<String> principals) {
+        Set<SseEmitter> out = new LinkedHashSet<>();
+        for (String p : principals) {
+            Set<SseEmitter> subs = byPrincipal.get(p);
+            if (subs != null) out.addAll(subs);
+        }
+        return out;
+    }
+
+    private void dispatch(InboxEvent event, List<String> principals) {
+        dispatcher.execute(() -> {
+            for (SseEmitter emitter : recipients(principals)) {
+                try {
+                    emitter.send(SseEmitter.event()
+                            .name(event.type().name())
+                            .id(event.taskId().toString())
+                            .data(event));
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e); // client went away; callbacks unsubscribe it
+                }
+            }
+        });
+    }
+
+    private void heartbeat() {
+        Set<SseEmitter> all = new LinkedHashSet<>();
+        byPrincipal.values().forEach(all::addAll);
+        for (SseEmitter emitter : all) {
+            try {
+                emitter.send(SseEmitter.event().comment("ping"));
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private void unsubscribe(SseEmitter emitter, List<String> principals) {
+        for (String p : principals) {
+            byPrincipal.computeIfPresent(p, (k, subs) -> {
+                subs.remove(emitter);
+                return subs.isEmpty() ? null : subs;
+            });
+        }
+    }
+}
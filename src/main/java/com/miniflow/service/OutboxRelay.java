@@ -0,0 +1,113 @@
+package com.miniflow.service;
+
+import com.miniflow.persist.entity.WfOutbox;
+import com.miniflow.persist.repo.WfOutboxRepo;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains wf_outbox to Kafka in id order.
+ * <p>
+ * Each drain is one transaction: take the cluster-wide relay lock (other nodes skip the round),
+ * read a batch, hand every record to the producer without waiting, flush, wait for all acks and
+ * delete the batch. A failed send rolls the batch back and it is retried on the next poll, so
+ * delivery is at-least-once. Producer batching, compression and in-flight limits are set in
+ * {@code KafkaAvroProducerConfig}; idempotence keeps per-partition order with several batches in flight.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "miniflow.outbox.relay", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private static final long RELAY_LOCK = 0x6d696e69666c6f77L; // "miniflow"
+
+    private final WfOutboxRepo repo;
+    private final WorkflowAvroEventService events;
+    private final KafkaTemplate<String, Object> avroKafkaTemplate;
+    private final TransactionTemplate tx;
+
+    @Value("${miniflow.outbox.relay.batch-size:500}")
+    private int batchSize = 500;
+    @Value("${miniflow.outbox.relay.poll-interval-ms:200}")
+    private long pollIntervalMs = 200;
+    @Value("${miniflow.outbox.relay.send-timeout-ms:30000}")
+    private long sendTimeoutMs = 30000;
+
+    private ScheduledExecutorService poller;
+
+    public OutboxRelay(WfOutboxRepo repo, WorkflowAvroEventService events,
+                       KafkaTemplate<String, Object> avroKafkaTemplate, PlatformTransactionManager txManager) {
+        this.repo = repo;
+        this.events = events;
+        this.avroKafkaTemplate = avroKafkaTemplate;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "miniflow-outbox-relay");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::drain, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Outbox relay started: batchSize={}", batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null) poller.shutdownNow();
+    }
+
+    void drain() {
+        try {
+            while (relayBatch() == batchSize) {
+                // full batch: more are waiting, keep going without sleeping
+            }
+        } catch (Exception e) {
+            log.warn("Outbox relay failed, retrying: {}", e.toString());
+        }
+    }
+
+    int relayBatch() {
+        Integer n = tx.execute(status -> {
+            if (!repo.tryRelayLock(RELAY_LOCK)) return 0;
+            List<WfOutbox> batch = repo.findBatch(batchSize);
+            if (batch.isEmpty()) return 0;
+
+            List<CompletableFuture<?>> acks = new ArrayList<>(batch.size());
+            List<Long> ids = new ArrayList<>(batch.size());
+            for (WfOutbox row : batch) {
+                acks.add(avroKafkaTemplate.send(row.topic, row.msgKey, events.decode(row.topic, row.payload)));
+                ids.add(row.id);
+            }
+            avroKafkaTemplate.flush();
+            try {
+                CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while relaying outbox", e);
+            } catch (Exception e) {
+                throw new IllegalStateException("Kafka did not acknowledge outbox batch", e);
+            }
+            repo.deleteAllByIdInBatch(ids);
+            return batch.size();
+        });
+        return n == null ? 0 : n;
+    }
+}
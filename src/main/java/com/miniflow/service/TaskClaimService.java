@@ -1,52 +1,161 @@
 package com.miniflow.service;
 
 
+import com.miniflow.dto.InboxEvent;
+import com.miniflow.dto.KeysetSlice;
+import com.miniflow.dto.TaskCursor;
 import com.miniflow.dto.TaskSummaryDTO;
-import com.miniflow.persist.entity.WfTask;
-import com.miniflow.persist.repo.WfTaskCandidateRepo;
+import com.miniflow.dto.VariableProjection;
+import com.miniflow.persist.repo.WfTaskInboxRepo;
 import com.miniflow.persist.repo.WfTaskRepo;
+
+import java.time.OffsetDateTime;
 import java.util.*;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Service
 public class TaskClaimService {
 
     private final WfTaskRepo taskRepo;
-    private final WfTaskCandidateRepo candidateRepo;
+    private final WfTaskInboxRepo inboxRepo;
+    private final InboxEventHub inboxEvents;
+    private final WorkflowAvroEventService eventService;
+    private final ClaimableTaskIndex index; // null unless miniflow.inbox.index.enabled
 
-    public TaskClaimService(WfTaskRepo taskRepo, WfTaskCandidateRepo candidateRepo) {
+    public TaskClaimService(WfTaskRepo taskRepo, WfTaskInboxRepo inboxRepo, InboxEventHub inboxEvents,
+                            WorkflowAvroEventService eventService, ObjectProvider<ClaimableTaskIndex> index) {
         this.taskRepo = taskRepo;
-        this.candidateRepo = candidateRepo;
+        this.inboxRepo = inboxRepo;
+        this.inboxEvents = inboxEvents;
+        this.eventService = eventService;
+        this.index = index.getIfAvailable();
+    }
+
+    /**
+     * Answered from the node-local {@link ClaimableTaskIndex} when it is enabled and loaded, no
+     * sort was requested and the offset is shallow enough; only the returned page is then read from
+     * the database, with the variables projected in SQL, and for callers with many listed tasks
+     * across several principals the total is an upper bound. Otherwise the JPQL query loads every
+     * variable map and the projection only trims the returned rows.
+     */
+    public Page<TaskSummaryDTO> listClaimables(String user, Collection<String> groups, Pageable pageable,
+                                               VariableProjection vars) {
+        if (!indexReady() || pageable.isUnpaged() || pageable.getSort().isSorted()
+                || !index.servesOffset(pageable.getOffset())) {
+            return taskRepo.findClaimables(user, sanitize(groups), pageable).map(vars::apply);
+        }
+        List<String> principals = List.of(principals(user, groups));
+        List<ClaimableTaskIndex.Key> keys = index.page(principals, pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(hydrate(keys, vars), pageable, index.count(principals));
     }
 
-    public Page<TaskSummaryDTO> listClaimables(String user, Collection<String> groups, Pageable pageable) {
-        return taskRepo.findClaimables(user, sanitize(groups), pageable);
+    /**
+     * Claimable tasks oldest first, starting after {@code cursor} (null for the first page).
+     * Read from the wf_task_inbox read model; instance variables are only fetched as requested.
+     */
+    public KeysetSlice<TaskSummaryDTO> listClaimablesAfter(String user, Collection<String> groups, String cursor, int size,
+                                                           VariableProjection vars) {
+        TaskCursor after = TaskCursor.decode(cursor);
+        int n = TaskSummaryRows.pageSize(size);
+        if (indexReady()) {
+            List<ClaimableTaskIndex.Key> keys = index.after(List.of(principals(user, groups)), toKey(after), n + 1);
+            List<TaskSummaryDTO> items = hydrate(keys.subList(0, Math.min(n, keys.size())), vars);
+            ClaimableTaskIndex.Key last = keys.size() > n ? keys.get(n - 1) : null;
+            return new KeysetSlice<>(items, last == null ? null : TaskCursor.after(last.createdAt(), last.taskId()).encode());
+        }
+        List<Object[]> rows = inboxRepo.findAfter(principals(user, groups),
+                after.sortKey(), after.id().toString(), n + 1, vars.mode().name(), vars.keyArray());
+        return TaskSummaryRows.slice(rows, n, t -> TaskCursor.after(t.createdAt, t.taskId));
     }
 
+    /**
+     * One statement: the candidacy check sits in the update predicate and the summary row is
+     * returned by the same round trip, together with the reason when nothing was claimed.
+     */
     @Transactional
     public TaskSummaryDTO claim(UUID taskId, String user, Collection<String> groups) {
-        // 1) Fast fail if task not open/unassigned
-        WfTask t = taskRepo.findById(taskId)
-                .orElseThrow(() -> new NoSuchElementException("Task not found: " + taskId));
-        if (!"OPEN".equalsIgnoreCase(t.state))
-            throw new IllegalStateException("Task not OPEN");
-        if (t.assignee != null)
-            throw new IllegalStateException("Task already assigned to: " + t.assignee);
-
-        // 2) Authorization: must be candidate user or in candidate group
-        long allowed = candidateRepo.countMembership(taskId, user, sanitize(groups));
-        if (allowed == 0)
-            throw new SecurityException("User '" + user + "' is not a candidate for this task");
-
-        // 3) Atomic claim (handles race: returns 0 if someone else beat you)
-        int updated = taskRepo.claimIfUnassigned(taskId, user);
-        if (updated == 0)
-            throw new IllegalStateException("Task was claimed by someone else");
-
-        return taskRepo.findSummary(taskId).orElseThrow();
+        List<Object[]> rows = taskRepo.claimReturningSummary(taskId, user, sanitize(groups).toArray(String[]::new));
+        if (rows.isEmpty())
+            throw new NoSuchElementException("Task not found: " + taskId);
+
+        Object[] r = rows.get(0);
+        switch ((String) r[0]) {
+            case "CLAIMED" -> {
+                return claimed(r);
+            }
+            case "NOT_OPEN" -> throw new IllegalStateException("Task not OPEN");
+            case "ASSIGNED" -> throw new IllegalStateException("Task already assigned to: " + r[1]);
+            case "NOT_CANDIDATE" -> throw new SecurityException("User '" + user + "' is not a candidate for this task");
+            default -> throw new IllegalStateException("Task was claimed by someone else");
+        }
+    }
+
+    /** Assigns the next task from the caller's queue, or returns empty when there is none. */
+    @Transactional
+    public Optional<TaskSummaryDTO> claimNext(String user, Collection<String> groups) {
+        List<Object[]> rows = taskRepo.claimNextReturningSummary(user, sanitize(groups).toArray(String[]::new));
+        return rows.isEmpty() ? Optional.empty() : Optional.of(claimed(rows.get(0)));
+    }
+
+    /** Live inbox changes for the caller, as Server-Sent Events. */
+    public SseEmitter subscribeInbox(String user, Collection<String> groups) {
+        return inboxEvents.subscribe(List.of(principals(user, groups)));
+    }
+
+    // tells everyone the task was listed for (and the new assignee) that it left the inbox, and
+    // queues TASK_CLAIMED in the claim's transaction
+    private TaskSummaryDTO claimed(Object[] r) {
+        TaskSummaryDTO s = TaskSummaryRows.toSummary(r, 2);
+        eventService.publishTaskAssignedEvent(s);
+        Set<String> notify = new LinkedHashSet<>();
+        if (r[16] != null) notify.addAll(Arrays.asList(r[16].toString().split(",")));
+        notify.add("U:" + s.assignee);
+        inboxEvents.publish(new InboxEvent(InboxEvent.Type.CLAIMED, s.taskId, s.instanceId,
+                s.nodeId, s.stepName, s.assignee, s.createdAt, s.dueDateTime), notify);
+        return s;
+    }
+
+    private boolean indexReady() {
+        return index != null && index.isReady();
+    }
+
+    // one query for the page; tasks claimed since the index was read are left out
+    private List<TaskSummaryDTO> hydrate(List<ClaimableTaskIndex.Key> keys, VariableProjection vars) {
+        if (keys.isEmpty()) return List.of();
+        String[] ids = keys.stream().map(k -> k.taskId().toString()).toArray(String[]::new);
+        Map<UUID, TaskSummaryDTO> byId = new HashMap<>();
+        for (Object[] r : inboxRepo.findByTaskIds(ids, vars.mode().name(), vars.keyArray())) {
+            TaskSummaryDTO t = TaskSummaryRows.toSummary(r, 0);
+            byId.put(t.taskId, t);
+        }
+        List<TaskSummaryDTO> out = new ArrayList<>(keys.size());
+        for (ClaimableTaskIndex.Key k : keys) {
+            TaskSummaryDTO t = byId.get(k.taskId());
+            if (t != null) out.add(t);
+        }
+        return out;
+    }
+
+    private static ClaimableTaskIndex.Key toKey(TaskCursor c) {
+        long micros = switch (c.sortKey()) {
+            case "-infinity" -> Long.MIN_VALUE;
+            case TaskCursor.NO_DATE -> Long.MAX_VALUE;
+            default -> ClaimableTaskIndex.Key.micros(OffsetDateTime.parse(c.sortKey()));
+        };
+        return new ClaimableTaskIndex.Key(micros, c.id());
+    }
+
+    // inbox keys: 'U:' + user, 'G:' + group
+    private static String[] principals(String user, Collection<String> groups) {
+        List<String> out = new ArrayList<>();
+        if (user != null && !user.isBlank()) out.add("U:" + user);
+        for (String g : sanitize(groups)) out.add("G:" + g);
+        return out.toArray(String[]::new);
     }
 
     private static List<String> sanitize(Collection<String> in) {
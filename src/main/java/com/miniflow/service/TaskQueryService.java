@@ -2,19 +2,29 @@ package com.miniflow.service;
 
 
 
+import com.miniflow.dto.KeysetSlice;
+import com.miniflow.dto.TaskCursor;
+import com.miniflow.dto.TaskSummaryDTO;
+import com.miniflow.dto.VariableProjection;
 import com.miniflow.persist.entity.WfTask;
 import com.miniflow.persist.repo.WfTaskRepo;
+import jakarta.persistence.EntityManager;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class TaskQueryService {
     private final WfTaskRepo taskRepo;
+    private final EntityManager em;
 
-    public TaskQueryService(WfTaskRepo taskRepo) {
+    public TaskQueryService(WfTaskRepo taskRepo, EntityManager em) {
         this.taskRepo = taskRepo;
+        this.em = em;
     }
 
     public List<WfTask> byAssignee(String assignee, String state, Pageable pageable) {
@@ -22,4 +32,29 @@ public class TaskQueryService {
         String effectiveStatus = (state == null || state.isBlank()) ? "OPEN" : state;
         return taskRepo.findByAssigneeAndState(assignee, effectiveStatus);
     }
+
+    /** Tasks of {@code assignee} by due date (undated last), starting after {@code cursor}. */
+    public KeysetSlice<TaskSummaryDTO> byAssigneeAfter(String assignee, String state, String cursor, int size,
+                                                       VariableProjection vars) {
+        TaskCursor after = TaskCursor.decode(cursor);
+        int n = TaskSummaryRows.pageSize(size);
+        String effectiveState = (state == null || state.isBlank()) ? null : state;
+        List<Object[]> rows = taskRepo.findTaskSummariesByAssigneeAfter(assignee, effectiveState,
+                after.sortKey(), after.id().toString(), n + 1, vars.mode().name(), vars.keyArray());
+        return TaskSummaryRows.slice(rows, n, t -> TaskCursor.after(t.dueDateTime, t.taskId));
+    }
+
+    /**
+     * Feeds every task in {@code state} to {@code sink} from a JDBC cursor. Each row is detached
+     * once consumed, so memory stays flat however many tasks match.
+     */
+    @Transactional(readOnly = true)
+    public void streamByState(String state, Consumer<WfTask> sink) {
+        try (Stream<WfTask> rows = taskRepo.streamByState(state)) {
+            rows.forEach(t -> {
+                sink.accept(t);
+                em.detach(t);
+            });
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package com.miniflow.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniflow.dto.KeysetSlice;
+import com.miniflow.dto.TaskCursor;
+import com.miniflow.dto.TaskSummaryDTO;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/** Maps native task-summary rows (TaskSummaryDTO fields in constructor order, variables as JSON text). */
+final class TaskSummaryRows {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    static final int MAX_PAGE_SIZE = 200;
+
+    private TaskSummaryRows() {
+    }
+
+    /** @param first index of the task id column; the 13 summary columns follow it */
+    @SuppressWarnings("unchecked")
+    static TaskSummaryDTO toSummary(Object[] r, int first) {
+        Map<String, Object> vars;
+        try {
+            vars = r[first + 12] == null ? Map.of() : JSON.readValue(r[first + 12].toString(), Map.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot read variables of task " + r[first], e);
+        }
+        return new TaskSummaryDTO(
+                (UUID) r[first], (UUID) r[first + 1],
+                (String) r[first + 2], (String) r[first + 3],
+                (String) r[first + 4], (String) r[first + 5],
+                (String) r[first + 6], toOffsetDateTime(r[first + 7]), toOffsetDateTime(r[first + 8]), toOffsetDateTime(r[first + 9]),
+                (String) r[first + 10], (String) r[first + 11],
+                vars,
+                (String) r[first + 13]);
+    }
+
+    /** Page size to request; one extra row is fetched to tell whether another page exists. */
+    static int pageSize(int requested) {
+        return Math.max(1, Math.min(requested, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Turns the {@code size + 1} rows of a keyset query into a slice, with a cursor positioned at
+     * the last returned row when more rows exist.
+     */
+    static KeysetSlice<TaskSummaryDTO> slice(List<Object[]> rows, int size, Function<TaskSummaryDTO, TaskCursor> position) {
+        int n = Math.min(rows.size(), size);
+        List<TaskSummaryDTO> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) items.add(toSummary(rows.get(i), 0));
+        String next = rows.size() > size ? position.apply(items.get(n - 1)).encode() : null;
+        return new KeysetSlice<>(items, next);
+    }
+
+    // native results may carry timestamptz as any of these, depending on driver and dialect
+    static OffsetDateTime toOffsetDateTime(Object v) {
+        if (v == null) return null;
+        if (v instanceof OffsetDateTime o) return o;
+        if (v instanceof Instant i) return i.atOffset(ZoneOffset.UTC);
+        if (v instanceof Timestamp ts) return ts.toInstant().atOffset(ZoneOffset.UTC);
+        if (v instanceof ZonedDateTime z) return z.toOffsetDateTime();
+        if (v instanceof LocalDateTime l) return l.atOffset(ZoneOffset.UTC); // hibernate.jdbc.time_zone is UTC
+        throw new IllegalStateException("Unexpected timestamp type: " + v.getClass().getName());
+    }
+}
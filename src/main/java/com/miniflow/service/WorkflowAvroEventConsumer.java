@@ -26,22 +26,5 @@ class WorkflowAvroEventConsumer {
         System.out.println("Visit:   " + value.get("visit_type"));
     }
 
-
-    @KafkaListener(topics = "workflow-instance-events-avro", groupId = "miniflow-test-consumer")
-    public void consumeInstanceEvent(ConsumerRecord<String, GenericRecord> record,
-                                     @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
-        GenericRecord value = record.value();
-
-        log.info("Received instance event: {}", value.get("variables"));
-    }
-
-    @KafkaListener(topics = "workflow-step-events-avro", groupId = "miniflow-test-consumer")
-    public void consumeStepEvent(ConsumerRecord<String, GenericRecord> record,
-                                 @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
-        GenericRecord value = record.value();
-        log.info("Received step event: {}", value.get("variables"));
-    }
-
-
-
+    // workflow-instance-events-avro and workflow-step-events-avro are projected by WorkflowEventProjector
 }
@@ -1,37 +1,80 @@
 package com.miniflow.service;
 
 
-import com.miniflow.avro.AvroSchemas;
+import com.miniflow.avro.InstanceEvent;
+import com.miniflow.avro.WorkflowEventCodec;
+import com.miniflow.dto.TaskSummaryDTO;
+import com.miniflow.events.WorkflowStepEvent;
 import com.miniflow.persist.entity.WfInstance;
 import com.miniflow.persist.entity.WfTask;
+import com.miniflow.persist.repo.WfInstanceRepo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.apache.avro.specific.SpecificRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 
+/**
+ * Workflow instance and step events, written to the outbox as Avro. Nothing is caught here: an
+ * event that cannot be written fails the engine transaction it belongs to.
+ * <p>
+ * Every event carries a {@code seq} that orders the events of its instance (shared by both
+ * topics, both keyed by instance id); the instance-created event is always 1, stored with the row.
+ * With {@code miniflow.events.variables.mode=full} each event carries the whole variable map and
+ * later events draw their seq from the wf_event_seq sequence, so there is no per-instance state to
+ * maintain. With {@code delta} seq counts the instance's events one by one, an event carries only
+ * the variables changed since the previous event of the instance, plus the removed keys, and every
+ * {@code snapshot-every}-th event (and the first) carries the whole map flagged
+ * {@code snapshot=true}. A consumer rebuilds state by applying events of both topics in
+ * {@code seq} order from the last snapshot; a gap in {@code seq} means it has to wait for the
+ * next snapshot. Switching a database from full to delta restarts the numbering of running instances.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class WorkflowAvroEventService {
 
+    enum VariablesMode { FULL, DELTA }
+
+    /** What an event says about the instance's variables. */
+    record EventVariables(long seq, boolean snapshot, Map<String, Object> variables, List<String> removed) {
+    }
+
     private static final String INSTANCE_TOPIC = "workflow-instance-events-avro";
     private static final String STEP_TOPIC     = "workflow-step-events-avro";
 
-    private static final Schema INSTANCE_EVENT_SCHEMA = AvroSchemas.loadSchema("/avro/InstanceEvent.avsc");
-    private static final Schema STEP_EVENT_SCHEMA     = AvroSchemas.loadSchema("/avro/WorkflowStepEvent.avsc");
+    // generated record class per topic; WorkflowEventCodec caches one datum writer/reader per class
+    private static final Map<String, Class<? extends SpecificRecord>> RECORD_TYPES = Map.of(
+            INSTANCE_TOPIC, InstanceEvent.class,
+            STEP_TOPIC, WorkflowStepEvent.class);
 
-    private final KafkaTemplate<String, Object> avroKafkaTemplate;
+    /** Events go to the transactional outbox; {@link OutboxRelay} sends them to Kafka after commit. */
+    private final EventOutbox outbox;
+    private final WfInstanceRepo instanceRepo;
+    private final VariablesMode mode;
+    private final long snapshotEvery;
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {};
+    private static final TypeReference<List<String>> KEYS = new TypeReference<>() {};
+
+    public WorkflowAvroEventService(EventOutbox outbox, WfInstanceRepo instanceRepo,
+                                    @Value("${miniflow.events.variables.mode:full}") String mode,
+                                    @Value("${miniflow.events.variables.snapshot-every:50}") long snapshotEvery) {
+        this.outbox = outbox;
+        this.instanceRepo = instanceRepo;
+        this.mode = VariablesMode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.snapshotEvery = snapshotEvery;
+    }
 
     /**
      * Convert Map<String, Object> → Map<String, String> (JSON for complex values)
@@ -56,91 +99,110 @@ public class WorkflowAvroEventService {
         return out;
     }
 
+    /** True when variable changes must be accumulated for the next event (delta mode). */
+    public boolean tracksVariableChanges() {
+        return mode == VariablesMode.DELTA;
+    }
+
     public void publishInstanceCreatedEvent(WfInstance instance, Map<String, Object> variables) {
-        try {
-            GenericRecord record = new GenericRecordBuilder(INSTANCE_EVENT_SCHEMA)
-                    .set("eventId", UUID.randomUUID().toString())
-                    .set("eventType", "INSTANCE_CREATED")
-                    .set("timestamp", Instant.now().toEpochMilli())
-                    .set("instanceId", instance.id.toString())
-                    .set("processId", instance.processId)          // null ok if schema allows
-                    .set("businessKey", instance.businessKey)      // null ok if schema allows
-                    .set("status", instance.status)
-                    .set("variables", toStringMap(variables))
-                    .build();
-
-            avroKafkaTemplate.send(INSTANCE_TOPIC, instance.id.toString(), record);
-            log.info("Published Avro instance CREATED event for instance {}", instance.id);
-        } catch (Exception e) {
-            log.error("Failed to publish Avro instance CREATED event", e);
-        }
+        // the first event: seq comes with the row, nothing has accumulated yet
+        EventVariables ev = new EventVariables(instance.eventSeq, true, variables, List.of());
+        InstanceEvent record = new InstanceEvent(
+                UUID.randomUUID().toString(), "INSTANCE_CREATED", Instant.now().toEpochMilli(),
+                instance.id.toString(), instance.processId, instance.businessKey, instance.status,
+                toStringMap(ev.variables()), ev.seq(), ev.snapshot(), ev.removed());
+
+        enqueue(INSTANCE_TOPIC, instance.id.toString(), record);
+        log.debug("Queued Avro instance CREATED event for instance {}", instance.id);
     }
 
     public void publishInstanceCompletedEvent(WfInstance instance, Map<String, Object> variables) {
-        try {
-            GenericRecord record = new GenericRecordBuilder(INSTANCE_EVENT_SCHEMA)
-                    .set("eventId", UUID.randomUUID().toString())
-                    .set("eventType", "INSTANCE_COMPLETED")
-                    .set("timestamp", Instant.now().toEpochMilli())
-                    .set("instanceId", instance.id.toString())
-                    .set("processId", instance.processId)
-                    .set("businessKey", instance.businessKey)
-                    .set("status", instance.status)
-                    .set("variables", toStringMap(variables))
-                    .build();
-
-            avroKafkaTemplate.send(INSTANCE_TOPIC, instance.id.toString(), record);
-            log.info("Published Avro instance COMPLETED event for instance {}", instance.id);
-        } catch (Exception e) {
-            log.error("Failed to publish Avro instance COMPLETED event", e);
-        }
+        EventVariables ev = eventVariables(instance.id, variables);
+        InstanceEvent record = new InstanceEvent(
+                UUID.randomUUID().toString(), "INSTANCE_COMPLETED", Instant.now().toEpochMilli(),
+                instance.id.toString(), instance.processId, instance.businessKey, instance.status,
+                toStringMap(ev.variables()), ev.seq(), ev.snapshot(), ev.removed());
+
+        enqueue(INSTANCE_TOPIC, instance.id.toString(), record);
+        log.debug("Queued Avro instance COMPLETED event for instance {}", instance.id);
     }
 
     public void publishTaskCreatedEvent(WfTask task, WfInstance instance, String nodeType, Map<String, Object> variables) {
-        try {
-            GenericRecord record = new GenericRecordBuilder(STEP_EVENT_SCHEMA)
-                    .set("eventId", UUID.randomUUID().toString())
-                    .set("eventType", "TASK_CREATED")
-                    .set("timestamp", Instant.now().toEpochMilli())
-                    .set("instanceId", instance.id.toString())
-                    .set("processId", instance.processId)
-                    .set("businessKey", instance.businessKey)
-                    .set("nodeId", task.nodeId)
-                    .set("nodeName", task.name)
-                    .set("nodeType", nodeType)
-                    .set("taskId", task.id.toString())
-                    .set("status", task.state)
-                    .set("variables", toStringMap(variables))
-                    .build();
-
-            avroKafkaTemplate.send(STEP_TOPIC, task.id.toString(), record);
-            log.info("Published Avro TASK CREATED event for task {}", task.id);
-        } catch (Exception e) {
-            log.error("Failed to publish Avro TASK CREATED event", e);
-        }
+        EventVariables ev = eventVariables(instance.id, variables);
+        WorkflowStepEvent record = new WorkflowStepEvent(
+                UUID.randomUUID().toString(), "TASK_CREATED", Instant.now().toEpochMilli(),
+                instance.id.toString(), instance.processId, instance.businessKey,
+                task.nodeId, task.name, nodeType, task.id.toString(), task.state,
+                Collections.unmodifiableMap(toStringMap(ev.variables())), ev.seq(), ev.snapshot(), ev.removed(),
+                task.assignee);
+
+        enqueue(STEP_TOPIC, instance.id.toString(), record);
+        log.debug("Queued Avro TASK CREATED event for task {}", task.id);
     }
 
     public void publishTaskCompletedEvent(WfTask task, WfInstance instance, String nodeType, Map<String, Object> variables) {
+        EventVariables ev = eventVariables(instance.id, variables);
+        WorkflowStepEvent record = new WorkflowStepEvent(
+                UUID.randomUUID().toString(), "TASK_COMPLETED", Instant.now().toEpochMilli(),
+                instance.id.toString(), instance.processId, instance.businessKey,
+                task.nodeId, task.name, nodeType, task.id.toString(), task.state,
+                Collections.unmodifiableMap(toStringMap(ev.variables())), ev.seq(), ev.snapshot(), ev.removed(),
+                task.assignee);
+
+        enqueue(STEP_TOPIC, instance.id.toString(), record);
+        log.debug("Queued Avro TASK COMPLETED event for task {}", task.id);
+    }
+
+    /**
+     * TASK_CLAIMED, or TASK_UNCLAIMED when the task has no assignee, so read models can move an open
+     * task between assignees before it completes.
+     */
+    public void publishTaskAssignedEvent(TaskSummaryDTO task) {
+        String type = task.assignee == null ? "TASK_UNCLAIMED" : "TASK_CLAIMED";
+        EventVariables ev = eventVariables(task.instanceId, task.variables);
+        WorkflowStepEvent record = new WorkflowStepEvent(
+                UUID.randomUUID().toString(), type, Instant.now().toEpochMilli(),
+                task.instanceId.toString(), task.processId, task.businessKey,
+                task.nodeId, task.stepName, "USER_TASK", task.taskId.toString(), task.state,
+                Collections.unmodifiableMap(toStringMap(ev.variables())), ev.seq(), ev.snapshot(), ev.removed(),
+                task.assignee);
+
+        enqueue(STEP_TOPIC, task.instanceId.toString(), record);
+        log.debug("Queued Avro {} event for task {}", type, task.taskId);
+    }
+
+    /**
+     * Takes the instance's next event sequence and the variables the event should carry: the full
+     * map in full mode and on snapshots, otherwise the changes accumulated since the previous event.
+     * In delta mode, instances without a row (e.g. test events) get {@code seq=0} and the full map.
+     */
+    EventVariables eventVariables(UUID instanceId, Map<String, Object> full) {
+        if (mode == VariablesMode.FULL) return new EventVariables(instanceRepo.nextEventSeq(), true, full, List.of());
+        List<Object[]> rows = instanceRepo.nextEvent(instanceId);
+        if (rows.isEmpty()) return new EventVariables(0, true, full, List.of());
+        Object[] r = rows.get(0);
+        long seq = ((Number) r[0]).longValue();
+        if (isSnapshot(seq)) return new EventVariables(seq, true, full, List.of());
         try {
-            GenericRecord record = new GenericRecordBuilder(STEP_EVENT_SCHEMA)
-                    .set("eventId", UUID.randomUUID().toString())
-                    .set("eventType", "TASK_COMPLETED")  // ✅ fixed
-                    .set("timestamp", Instant.now().toEpochMilli())
-                    .set("instanceId", instance.id.toString())
-                    .set("processId", instance.processId)
-                    .set("businessKey", instance.businessKey)
-                    .set("nodeId", task.nodeId)
-                    .set("nodeName", task.name)
-                    .set("nodeType", nodeType)
-                    .set("taskId", task.id.toString())
-                    .set("status", task.state)
-                    .set("variables", toStringMap(variables))
-                    .build();
-
-            avroKafkaTemplate.send(STEP_TOPIC, task.id.toString(), record);
-            log.info("Published Avro TASK COMPLETED event for task {}", task.id);
-        } catch (Exception e) {
-            log.error("Failed to publish Avro TASK COMPLETED event", e);
+            return new EventVariables(seq, false, MAPPER.readValue((String) r[1], MAP), MAPPER.readValue((String) r[2], KEYS));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable event delta of instance " + instanceId, e);
         }
     }
+
+    boolean isSnapshot(long seq) {
+        return seq <= 1 || (snapshotEvery > 0 && seq % snapshotEvery == 0);
+    }
+
+    /** Decodes an outbox payload back into the record that was queued for {@code topic}. */
+    public SpecificRecord decode(String topic, byte[] payload) {
+        Class<? extends SpecificRecord> type = RECORD_TYPES.get(topic);
+        if (type == null) throw new IllegalArgumentException("No Avro schema for topic " + topic);
+        return WorkflowEventCodec.decode(payload, type);
+    }
+
+    // keyed by instance id so all events of an instance land on one partition, in order
+    private void enqueue(String topic, String instanceId, SpecificRecord record) {
+        outbox.append(topic, instanceId, WorkflowEventCodec.encode(record));
+    }
 }
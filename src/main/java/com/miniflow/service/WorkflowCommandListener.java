@@ -0,0 +1,82 @@
+package com.miniflow.service;
+
+import com.miniflow.events.WorkflowCommand;
+import com.miniflow.persist.repo.WfCommandLogRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Inbound command channel: each poll of {@code miniflow.commands.topic} is handed to
+ * {@link WorkflowCommandProcessor} as one list, and its offsets are committed only after the
+ * processor's transactions have committed. A crash in between redelivers commands whose effects
+ * are already in the database; their ids are in wf_command_log, so they are skipped. Log rows
+ * older than {@code miniflow.commands.log-retention-hours} are pruned every
+ * {@code prune-interval-ms}.
+ * <p>
+ * Records that cannot be deserialized arrive as {@code null} values (ErrorHandlingDeserializer)
+ * and are logged and skipped rather than blocking the partition.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "miniflow.commands", name = "enabled", havingValue = "true")
+public class WorkflowCommandListener {
+
+    private final WorkflowCommandProcessor processor;
+    private final WfCommandLogRepo commandLog;
+    private final int retentionHours;
+    private final long pruneIntervalMs;
+    private volatile long lastPrune = System.currentTimeMillis();
+
+    public WorkflowCommandListener(WorkflowCommandProcessor processor, WfCommandLogRepo commandLog,
+                                   @Value("${miniflow.commands.log-retention-hours:168}") int retentionHours,
+                                   @Value("${miniflow.commands.prune-interval-ms:3600000}") long pruneIntervalMs) {
+        this.processor = processor;
+        this.commandLog = commandLog;
+        this.retentionHours = retentionHours;
+        this.pruneIntervalMs = pruneIntervalMs;
+    }
+
+    @KafkaListener(topics = "${miniflow.commands.topic:workflow-commands-avro}",
+            groupId = "${miniflow.commands.group-id:miniflow-commands}",
+            containerFactory = "commandListenerContainerFactory")
+    public void onCommands(List<ConsumerRecord<String, WorkflowCommand>> records, Acknowledgment ack) {
+        List<WorkflowCommand> commands = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, WorkflowCommand> r : records) {
+            if (r.value() == null) {
+                log.warn("Skipping undeserializable command at {}-{}@{}", r.topic(), r.partition(), r.offset());
+            } else {
+                commands.add(r.value());
+            }
+        }
+        if (!commands.isEmpty()) {
+            var outcomes = processor.process(commands);
+            if (log.isDebugEnabled()) {
+                log.debug("Applied {} commands: {}", outcomes.size(), outcomes.stream()
+                        .collect(Collectors.groupingBy(WorkflowCommandProcessor.Outcome::status, Collectors.counting())));
+            }
+        }
+        ack.acknowledge(); // a failure above skips this; the error handler seeks back and redelivers
+        pruneIfDue();
+    }
+
+    private void pruneIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrune < pruneIntervalMs) return;
+        lastPrune = now;
+        try {
+            int n = commandLog.prune(retentionHours);
+            if (n > 0) log.debug("Pruned {} command log rows", n);
+        } catch (Exception e) {
+            log.warn("Pruning the command log failed: {}", e.toString());
+        }
+    }
+}
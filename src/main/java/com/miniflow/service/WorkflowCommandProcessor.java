@@ -0,0 +1,226 @@
+package com.miniflow.service;
+
+import com.miniflow.core.CommandRetry;
+import com.miniflow.core.DbBackedEngine;
+import com.miniflow.events.WorkflowCommand;
+import com.miniflow.persist.entity.WfTask;
+import com.miniflow.persist.repo.WfCommandLogRepo;
+import com.miniflow.persist.repo.WfTaskRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.util.*;
+
+/**
+ * Applies inbound {@link WorkflowCommand}s to the engine in micro-batches, one transaction per batch.
+ * <p>
+ * A batch first claims its command ids in wf_command_log; ids claimed before are reported as
+ * DUPLICATE and skipped, so a redelivered batch changes nothing twice. Starts go through
+ * {@link DbBackedEngine#startAll} per process, then message correlations are resolved to the open
+ * task they complete, then all completions go through {@link DbBackedEngine#completeUserTasks}.
+ * The outcomes are written back to the log in the same transaction.
+ * <p>
+ * If a batch fails, it is re-run one command per transaction, and a command that fails on its own
+ * is logged as FAILED (and not retried). Database outages are rethrown instead, so the listener
+ * leaves the offsets uncommitted and Kafka redelivers.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "miniflow.commands", name = "enabled", havingValue = "true")
+public class WorkflowCommandProcessor {
+
+    /** status: STARTED, COMPLETED, NOT_FOUND, NOT_OPEN, NO_MATCH, REJECTED, FAILED or DUPLICATE. */
+    public record Outcome(String commandId, String status, String result, String error) {
+    }
+
+    private final DbBackedEngine engine;
+    private final WfTaskRepo taskRepo;
+    private final WfCommandLogRepo commandLog;
+    private final CommandRetry retry;
+    private final int batchSize;
+
+    public WorkflowCommandProcessor(DbBackedEngine engine, WfTaskRepo taskRepo, WfCommandLogRepo commandLog,
+                                    CommandRetry retry,
+                                    @Value("${miniflow.commands.batch-size:500}") int batchSize) {
+        this.engine = engine;
+        this.taskRepo = taskRepo;
+        this.commandLog = commandLog;
+        this.retry = retry;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /** Outcomes in command order. */
+    public List<Outcome> process(List<WorkflowCommand> commands) {
+        List<Outcome> out = new ArrayList<>(commands.size());
+        for (int from = 0; from < commands.size(); from += batchSize) {
+            out.addAll(processBatch(commands.subList(from, Math.min(commands.size(), from + batchSize))));
+        }
+        return out;
+    }
+
+    private List<Outcome> processBatch(List<WorkflowCommand> batch) {
+        try {
+            return retry.inTransaction("commands(" + batch.size() + ")", () -> apply(batch));
+        } catch (RuntimeException e) {
+            if (isOutage(e)) throw e;
+            if (batch.size() == 1) return List.of(fail(batch.get(0), e));
+            log.warn("Command batch of {} failed, re-running one by one: {}", batch.size(), e.toString());
+        }
+        List<Outcome> out = new ArrayList<>(batch.size());
+        for (WorkflowCommand c : batch) {
+            try {
+                out.addAll(retry.inTransaction("command " + c.getCommandId(), () -> apply(List.of(c))));
+            } catch (RuntimeException e) {
+                if (isOutage(e)) throw e;
+                out.add(fail(c, e));
+            }
+        }
+        return out;
+    }
+
+    private Outcome fail(WorkflowCommand c, RuntimeException e) {
+        log.warn("Command {} ({}) failed: {}", c.getCommandId(), c.getType(), e.toString());
+        Outcome failed = new Outcome(c.getCommandId(), "FAILED", null, String.valueOf(e.getMessage()));
+        boolean claimed = retry.inTransaction("fail " + c.getCommandId(), () -> {
+            if (commandLog.claim(new String[]{c.getCommandId()}).isEmpty()) return false;
+            record(List.of(failed));
+            return true;
+        });
+        return claimed ? failed : new Outcome(c.getCommandId(), "DUPLICATE", null, null);
+    }
+
+    // errors worth redelivering the batch for, rather than failing commands
+    private static boolean isOutage(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException || t instanceof CannotCreateTransactionException) return true;
+            if (t instanceof NonTransientDataAccessException) return false;
+        }
+        return false;
+    }
+
+    List<Outcome> apply(List<WorkflowCommand> batch) {
+        Set<String> fresh = new HashSet<>(commandLog.claim(
+                batch.stream().map(WorkflowCommand::getCommandId).distinct().toArray(String[]::new)));
+        Outcome[] out = new Outcome[batch.size()];
+        Map<String, List<Integer>> starts = new LinkedHashMap<>();
+        List<Integer> completions = new ArrayList<>();
+        List<Integer> correlations = new ArrayList<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            WorkflowCommand c = batch.get(i);
+            if (!fresh.remove(c.getCommandId())) {
+                out[i] = new Outcome(c.getCommandId(), "DUPLICATE", null, null);
+                continue;
+            }
+            switch (c.getType()) {
+                case START_INSTANCE -> {
+                    if (c.getProcessId() == null || !engine.deployedProcessIds().contains(c.getProcessId())) {
+                        out[i] = rejected(c, "unknown process " + c.getProcessId());
+                    } else {
+                        starts.computeIfAbsent(c.getProcessId(), k -> new ArrayList<>()).add(i);
+                    }
+                }
+                case COMPLETE_TASK -> {
+                    if (parseUuid(c.getTaskId()) == null) out[i] = rejected(c, "taskId is not a UUID");
+                    else completions.add(i);
+                }
+                case CORRELATE_MESSAGE -> {
+                    if (c.getMessageName() == null || (c.getInstanceId() == null && c.getBusinessKey() == null)) {
+                        out[i] = rejected(c, "messageName and instanceId or businessKey are required");
+                    } else {
+                        correlations.add(i);
+                    }
+                }
+            }
+        }
+
+        for (var group : starts.entrySet()) {
+            List<Integer> idx = group.getValue();
+            List<DbBackedEngine.StartResult> started = engine.startAll(group.getKey(), idx.stream()
+                    .map(i -> new DbBackedEngine.StartRequest(batch.get(i).getBusinessKey(), variables(batch.get(i)))));
+            for (int n = 0; n < idx.size(); n++) {
+                out[idx.get(n)] = new Outcome(batch.get(idx.get(n)).getCommandId(), "STARTED",
+                        started.get(n).instanceId().toString(), null);
+            }
+        }
+
+        // correlations after starts, so a message may follow the start of its instance in one batch
+        Map<UUID, Integer> byTask = new LinkedHashMap<>();
+        for (int i : completions) {
+            UUID taskId = parseUuid(batch.get(i).getTaskId());
+            if (byTask.putIfAbsent(taskId, i) != null) out[i] = notOpen(batch.get(i));
+        }
+        for (int i : correlations) {
+            Optional<UUID> taskId = resolve(batch.get(i));
+            if (taskId.isEmpty()) {
+                out[i] = new Outcome(batch.get(i).getCommandId(), "NO_MATCH", null, null);
+            } else if (byTask.putIfAbsent(taskId.get(), i) != null) {
+                out[i] = notOpen(batch.get(i));
+            }
+        }
+        if (!byTask.isEmpty()) {
+            List<DbBackedEngine.TaskCompletion> list = new ArrayList<>(byTask.size());
+            byTask.forEach((taskId, i) -> list.add(new DbBackedEngine.TaskCompletion(taskId, variables(batch.get(i)))));
+            for (DbBackedEngine.TaskCompletionResult r : engine.completeUserTasks(list)) {
+                int i = byTask.get(r.taskId());
+                out[i] = new Outcome(batch.get(i).getCommandId(), r.status(),
+                        r.instanceId() == null ? null : r.instanceId().toString(), r.error());
+            }
+        }
+
+        List<Outcome> result = Arrays.asList(out);
+        record(result.stream().filter(o -> !"DUPLICATE".equals(o.status())).toList());
+        return result;
+    }
+
+    private Optional<UUID> resolve(WorkflowCommand c) {
+        if (c.getInstanceId() != null) {
+            UUID iid = parseUuid(c.getInstanceId());
+            if (iid == null) return Optional.empty();
+            return taskRepo.findFirstByInstanceIdAndNodeIdAndStateOrderByCreatedAtAsc(iid, c.getMessageName(), "OPEN")
+                    .map(t -> t.id);
+        }
+        return taskRepo.findOpenTaskIdByBusinessKey(c.getProcessId(), c.getBusinessKey(), c.getMessageName())
+                .stream().findFirst();
+    }
+
+    private void record(List<Outcome> outcomes) {
+        if (outcomes.isEmpty()) return;
+        int n = outcomes.size();
+        String[] ids = new String[n], statuses = new String[n], results = new String[n], errors = new String[n];
+        for (int i = 0; i < n; i++) {
+            Outcome o = outcomes.get(i);
+            ids[i] = o.commandId();
+            statuses[i] = o.status();
+            results[i] = o.result();
+            errors[i] = o.error();
+        }
+        commandLog.record(ids, statuses, results, errors);
+    }
+
+    private static Map<String, Object> variables(WorkflowCommand c) {
+        return c.getVariables() == null ? Map.of() : new HashMap<>(c.getVariables());
+    }
+
+    private static Outcome rejected(WorkflowCommand c, String why) {
+        return new Outcome(c.getCommandId(), "REJECTED", null, why);
+    }
+
+    private static Outcome notOpen(WorkflowCommand c) {
+        return new Outcome(c.getCommandId(), "NOT_OPEN", null, "task already completed by an earlier command of the batch");
+    }
+
+    private static UUID parseUuid(String s) {
+        if (s == null) return null;
+        try {
+            return UUID.fromString(s);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
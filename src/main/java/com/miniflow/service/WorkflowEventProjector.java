@@ -0,0 +1,227 @@
+package com.miniflow.service;
+
+import com.miniflow.avro.InstanceEvent;
+import com.miniflow.events.WorkflowStepEvent;
+import com.miniflow.persist.entity.WfReportTask;
+import com.miniflow.persist.repo.WfReportEventRepo;
+import com.miniflow.persist.repo.WfReportInstanceRepo;
+import com.miniflow.persist.repo.WfReportTaskCountRepo;
+import com.miniflow.persist.repo.WfReportTaskRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Keeps the reporting read model (wf_report_*) current from the Avro event topics, so dashboards
+ * query it instead of the runtime tables the engine writes to.
+ * <p>
+ * Each poll is projected in one transaction: the event ids are claimed in wf_report_event (events
+ * seen before are skipped), instance events are collapsed to the latest per instance and upserted,
+ * and step events move their task between (process, node, assignee) count buckets, with the signed
+ * deltas of the whole poll added in one statement. TASK_CLAIMED and TASK_UNCLAIMED move an open
+ * task to its new assignee (or back to '') as soon as it is claimed. Offsets are committed after
+ * that transaction. A task completed before its creation event arrives is not reopened by it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "miniflow.projection", name = "enabled", havingValue = "true")
+public class WorkflowEventProjector {
+
+    private static final String OPEN = "OPEN";
+    private static final String COMPLETED = "COMPLETED";
+
+    private final WfReportEventRepo eventRepo;
+    private final WfReportInstanceRepo instanceRepo;
+    private final WfReportTaskRepo taskRepo;
+    private final WfReportTaskCountRepo countRepo;
+    private final TransactionTemplate tx;
+    private final int retentionHours;
+    private final long pruneIntervalMs;
+    private volatile long lastPrune = System.currentTimeMillis();
+
+    public WorkflowEventProjector(WfReportEventRepo eventRepo, WfReportInstanceRepo instanceRepo,
+                                  WfReportTaskRepo taskRepo, WfReportTaskCountRepo countRepo,
+                                  PlatformTransactionManager txManager,
+                                  @Value("${miniflow.projection.event-retention-hours:168}") int retentionHours,
+                                  @Value("${miniflow.projection.prune-interval-ms:3600000}") long pruneIntervalMs) {
+        this.eventRepo = eventRepo;
+        this.instanceRepo = instanceRepo;
+        this.taskRepo = taskRepo;
+        this.countRepo = countRepo;
+        this.tx = new TransactionTemplate(txManager);
+        this.retentionHours = retentionHours;
+        this.pruneIntervalMs = pruneIntervalMs;
+    }
+
+    @KafkaListener(topics = {"${miniflow.projection.instance-topic:workflow-instance-events-avro}",
+            "${miniflow.projection.step-topic:workflow-step-events-avro}"},
+            groupId = "${miniflow.projection.group-id:miniflow-projection}",
+            containerFactory = "projectionListenerContainerFactory")
+    public void onEvents(List<ConsumerRecord<String, Object>> records, Acknowledgment ack) {
+        List<Object> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, Object> r : records) {
+            if (r.value() == null) {
+                log.warn("Skipping undeserializable event at {}-{}@{}", r.topic(), r.partition(), r.offset());
+            } else {
+                events.add(r.value());
+            }
+        }
+        if (!events.isEmpty()) tx.executeWithoutResult(s -> project(events));
+        ack.acknowledge();
+        pruneIfDue();
+    }
+
+    void project(List<Object> events) {
+        List<String> ids = new ArrayList<>(events.size());
+        for (Object e : events) {
+            if (e instanceof InstanceEvent ie) ids.add(ie.getEventId());
+            else if (e instanceof WorkflowStepEvent se) ids.add(se.getEventId());
+        }
+        if (ids.isEmpty()) return;
+        Set<String> fresh = new HashSet<>(eventRepo.claim(ids.stream().distinct().toArray(String[]::new)));
+
+        Map<String, InstanceEvent> latest = new LinkedHashMap<>();
+        Map<String, Long> createdAt = new HashMap<>();
+        List<WorkflowStepEvent> steps = new ArrayList<>();
+        for (Object e : events) {
+            if (e instanceof InstanceEvent ie && fresh.remove(ie.getEventId())) {
+                if ("INSTANCE_CREATED".equals(ie.getEventType())) createdAt.put(ie.getInstanceId(), ie.getTimestamp());
+                latest.merge(ie.getInstanceId(), ie, (a, b) -> isNewer(b, a) ? b : a);
+            } else if (e instanceof WorkflowStepEvent se && fresh.remove(se.getEventId()) && se.getTaskId() != null) {
+                steps.add(se);
+            }
+        }
+        if (!latest.isEmpty()) projectInstances(latest.values(), createdAt);
+        if (!steps.isEmpty()) projectTasks(steps);
+    }
+
+    // same rule as WfReportInstanceRepo.upsertAll: a snapshot with a lower seq wins by time, since
+    // switching full to delta restarts the numbering
+    static boolean isNewer(InstanceEvent b, InstanceEvent a) {
+        int bySeq = Long.compare(b.getSeq(), a.getSeq());
+        if (bySeq > 0) return true;
+        return (bySeq == 0 || b.getSnapshot()) && b.getTimestamp() >= a.getTimestamp();
+    }
+
+    private void projectInstances(Collection<InstanceEvent> events, Map<String, Long> createdAt) {
+        int n = events.size(), i = 0;
+        String[] ids = new String[n], processIds = new String[n], businessKeys = new String[n], statuses = new String[n],
+                seqs = new String[n], snapshots = new String[n], created = new String[n], updated = new String[n];
+        for (InstanceEvent e : events) {
+            ids[i] = e.getInstanceId();
+            processIds[i] = e.getProcessId();
+            businessKeys[i] = e.getBusinessKey();
+            statuses[i] = e.getStatus() != null ? e.getStatus() : e.getEventType().replace("INSTANCE_", "");
+            seqs[i] = String.valueOf(e.getSeq());
+            snapshots[i] = String.valueOf(e.getSnapshot());
+            Long c = createdAt.get(e.getInstanceId());
+            created[i] = c == null ? null : String.valueOf(c);
+            updated[i] = String.valueOf(e.getTimestamp());
+            i++;
+        }
+        instanceRepo.upsertAll(ids, processIds, businessKeys, statuses, seqs, snapshots, created, updated);
+    }
+
+    /** A task's projected state; {@code assignee} is '' when unassigned. */
+    record TaskRow(String instanceId, String processId, String nodeId, String assignee, String state,
+                   Long createdMs, Long completedMs) {
+    }
+
+    record CountKey(String processId, String nodeId, String assignee) implements Comparable<CountKey> {
+        private static final Comparator<CountKey> ORDER = Comparator.comparing(CountKey::processId)
+                .thenComparing(CountKey::nodeId).thenComparing(CountKey::assignee);
+
+        @Override
+        public int compareTo(CountKey o) {
+            return ORDER.compare(this, o);
+        }
+    }
+
+    private void projectTasks(List<WorkflowStepEvent> steps) {
+        Set<UUID> taskIds = new HashSet<>();
+        for (WorkflowStepEvent e : steps) taskIds.add(UUID.fromString(e.getTaskId()));
+        Map<String, TaskRow> rows = new HashMap<>();
+        for (WfReportTask t : taskRepo.findAllById(taskIds)) {
+            rows.put(t.taskId.toString(), new TaskRow(t.instanceId == null ? null : t.instanceId.toString(), t.processId, t.nodeId,
+                    t.assignee, t.state, null, null));
+        }
+
+        Map<String, TaskRow> changed = new LinkedHashMap<>();
+        SortedMap<CountKey, long[]> deltas = new TreeMap<>(); // {open, completed}; sorted for lock order
+        for (WorkflowStepEvent e : steps) {
+            boolean completed = "TASK_COMPLETED".equals(e.getEventType()) || COMPLETED.equals(e.getStatus());
+            TaskRow cur = rows.get(e.getTaskId());
+            if (cur != null && COMPLETED.equals(cur.state()) && !completed) continue; // late creation event
+            String assignee = "TASK_UNCLAIMED".equals(e.getEventType()) ? ""
+                    : e.getAssignee() != null ? e.getAssignee() : cur != null ? cur.assignee() : "";
+            TaskRow next = new TaskRow(e.getInstanceId(), e.getProcessId(), e.getNodeId(), assignee,
+                    completed ? COMPLETED : OPEN,
+                    cur != null ? cur.createdMs() : completed ? null : e.getTimestamp(),
+                    completed ? e.getTimestamp() : null);
+            if (cur != null) count(deltas, cur, -1);
+            count(deltas, next, 1);
+            rows.put(e.getTaskId(), next);
+            changed.put(e.getTaskId(), next);
+        }
+
+        if (!changed.isEmpty()) {
+            int n = changed.size(), i = 0;
+            String[] ids = new String[n], instanceIds = new String[n], processIds = new String[n], nodeIds = new String[n],
+                    assignees = new String[n], states = new String[n], created = new String[n], completed = new String[n];
+            for (var e : changed.entrySet()) {
+                TaskRow r = e.getValue();
+                ids[i] = e.getKey();
+                instanceIds[i] = r.instanceId();
+                processIds[i] = r.processId();
+                nodeIds[i] = r.nodeId();
+                assignees[i] = r.assignee();
+                states[i] = r.state();
+                created[i] = r.createdMs() == null ? null : String.valueOf(r.createdMs());
+                completed[i] = r.completedMs() == null ? null : String.valueOf(r.completedMs());
+                i++;
+            }
+            taskRepo.upsertAll(ids, instanceIds, processIds, nodeIds, assignees, states, created, completed);
+        }
+
+        deltas.values().removeIf(d -> d[0] == 0 && d[1] == 0);
+        if (!deltas.isEmpty()) {
+            int n = deltas.size(), i = 0;
+            String[] processIds = new String[n], nodeIds = new String[n], assignees = new String[n],
+                    open = new String[n], completed = new String[n];
+            for (var e : deltas.entrySet()) {
+                processIds[i] = e.getKey().processId();
+                nodeIds[i] = e.getKey().nodeId();
+                assignees[i] = e.getKey().assignee();
+                open[i] = String.valueOf(e.getValue()[0]);
+                completed[i] = String.valueOf(e.getValue()[1]);
+                i++;
+            }
+            countRepo.addAll(processIds, nodeIds, assignees, open, completed);
+        }
+    }
+
+    private static void count(Map<CountKey, long[]> deltas, TaskRow row, int sign) {
+        long[] d = deltas.computeIfAbsent(new CountKey(row.processId(), row.nodeId(), row.assignee()), k -> new long[2]);
+        d[COMPLETED.equals(row.state()) ? 1 : 0] += sign;
+    }
+
+    private void pruneIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrune < pruneIntervalMs) return;
+        lastPrune = now;
+        try {
+            int n = eventRepo.prune(retentionHours);
+            if (n > 0) log.debug("Pruned {} projected event ids", n);
+        } catch (Exception e) {
+            log.warn("Pruning projected event ids failed: {}", e.toString());
+        }
+    }
+}
@@ -1,15 +1,13 @@
 package com.miniflow.util;
 
+import com.miniflow.avro.WorkflowEventCodec;
 import org.apache.avro.specific.SpecificRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 /**
  * Utility class for Avro serialization and deserialization
@@ -22,15 +20,14 @@ public class AvroSerializationUtil {
      * Serialize an Avro record to a byte buffer
      * 
      * @param record The Avro record to serialize
-     * @return ByteBuffer containing the serialized data
+     * @return ByteBuffer containing the serialized data (plain binary datum, no single-object header)
      */
     public static ByteBuffer serializeToByteBuffer(SpecificRecord record) {
         try {
-            // Use reflection to call toByteBuffer() method on any SpecificRecord
-            return (ByteBuffer) record.getClass().getMethod("toByteBuffer").invoke(record);
-        } catch (Exception e) {
+            return ByteBuffer.wrap(WorkflowEventCodec.encode(record));
+        } catch (RuntimeException e) {
             logger.error("Error serializing Avro record", e);
-            throw new RuntimeException("Failed to serialize Avro record", e);
+            throw e;
         }
     }
     
@@ -41,15 +38,14 @@ public class AvroSerializationUtil {
      * @param recordClass The class of the Avro record
      * @return Deserialized Avro record
      */
-    @SuppressWarnings("unchecked")
     public static <T extends SpecificRecord> T deserializeRecord(ByteBuffer buffer, Class<T> recordClass) {
         try {
-            // Use reflection to call fromByteBuffer() static method
-            return (T) recordClass.getMethod("fromByteBuffer", ByteBuffer.class)
-                    .invoke(null, buffer);
-        } catch (Exception e) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return WorkflowEventCodec.decode(bytes, recordClass);
+        } catch (RuntimeException e) {
             logger.error("Error deserializing Avro record", e);
-            throw new RuntimeException("Failed to deserialize Avro record", e);
+            throw e;
         }
     }
     
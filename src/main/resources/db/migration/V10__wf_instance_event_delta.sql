@@ -0,0 +1,5 @@
+-- Variable changes not yet carried by a workflow event, for delta events (miniflow.events.variables.mode=delta).
+-- WfInstanceRepo.mergeVariables accumulates them; WfInstanceRepo.nextEvent takes and clears them.
+ALTER TABLE wf_instance ADD COLUMN IF NOT EXISTS event_seq     bigint NOT NULL DEFAULT 0;
+ALTER TABLE wf_instance ADD COLUMN IF NOT EXISTS event_changed jsonb  NOT NULL DEFAULT '{}';
+ALTER TABLE wf_instance ADD COLUMN IF NOT EXISTS event_removed text[] NOT NULL DEFAULT '{}';
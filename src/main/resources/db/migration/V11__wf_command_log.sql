@@ -0,0 +1,13 @@
+-- Idempotency log of commands ingested from Kafka (WorkflowCommandProcessor); a row commits with the
+-- engine changes of its command, so a redelivered command id is skipped
+CREATE TABLE IF NOT EXISTS wf_command_log (
+  command_id   text PRIMARY KEY,
+  status       text NOT NULL DEFAULT 'ACCEPTED',  -- STARTED, COMPLETED, NOT_FOUND, NOT_OPEN, NO_MATCH, REJECTED, FAILED
+  result       text,                              -- instance id for STARTED, instance of the task otherwise
+  error        text,
+  processed_at timestamptz NOT NULL DEFAULT now()
+);
+CREATE INDEX IF NOT EXISTS wf_command_log_processed_idx ON wf_command_log(processed_at);
+
+-- CORRELATE_MESSAGE by business key
+CREATE INDEX IF NOT EXISTS wf_instance_business_key_idx ON wf_instance(business_key);
@@ -0,0 +1,43 @@
+-- Reporting read model, kept current from the Avro event topics by WorkflowEventProjector, so
+-- dashboards and reports do not query the engine's runtime tables
+
+-- latest known status per instance
+CREATE TABLE IF NOT EXISTS wf_report_instance (
+  instance_id  uuid PRIMARY KEY,
+  process_id   text,
+  business_key text,
+  status       text,
+  last_seq     bigint NOT NULL DEFAULT 0,      -- event seq applied last; older events are ignored
+  created_at   timestamptz,
+  updated_at   timestamptz NOT NULL            -- time of the last applied event
+);
+CREATE INDEX IF NOT EXISTS wf_report_instance_bk_idx     ON wf_report_instance(business_key);
+CREATE INDEX IF NOT EXISTS wf_report_instance_status_idx ON wf_report_instance(process_id, status);
+
+-- last projected state of each task: the projector needs it to move a task between count buckets
+CREATE TABLE IF NOT EXISTS wf_report_task (
+  task_id      uuid PRIMARY KEY,
+  instance_id  uuid,
+  process_id   text NOT NULL,
+  node_id      text NOT NULL,
+  assignee     text NOT NULL DEFAULT '',       -- '' = unassigned
+  state        text NOT NULL,                  -- OPEN or COMPLETED
+  created_at   timestamptz,
+  completed_at timestamptz
+);
+
+CREATE TABLE IF NOT EXISTS wf_report_task_count (
+  process_id      text NOT NULL,
+  node_id         text NOT NULL,
+  assignee        text NOT NULL,               -- '' = unassigned
+  open_count      bigint NOT NULL DEFAULT 0,
+  completed_count bigint NOT NULL DEFAULT 0,
+  PRIMARY KEY (process_id, node_id, assignee)
+);
+
+-- event ids already projected (idempotency); pruned after miniflow.projection.event-retention-hours
+CREATE TABLE IF NOT EXISTS wf_report_event (
+  event_id     text PRIMARY KEY,
+  projected_at timestamptz NOT NULL DEFAULT now()
+);
+CREATE INDEX IF NOT EXISTS wf_report_event_projected_idx ON wf_report_event(projected_at);
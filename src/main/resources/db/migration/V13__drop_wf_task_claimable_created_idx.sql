@@ -0,0 +1,3 @@
+-- The claimable keyset listing reads wf_task_inbox since V7; nothing scans this index any more,
+-- but every insert and assignment on wf_task still had to maintain it.
+DROP INDEX IF EXISTS wf_task_claimable_created_idx;
@@ -0,0 +1,18 @@
+-- The wf_task_inbox NOTIFY feed (V8) only has listeners when miniflow.inbox.index.enabled is set,
+-- so writers now skip pg_notify unless their session opts in with
+--   set miniflow.inbox_notify = 'on'
+-- (spring.datasource.hikari.connection-init-sql on every node, once any node runs the index).
+CREATE OR REPLACE FUNCTION wf_task_inbox_notify() RETURNS trigger AS $$
+BEGIN
+  IF coalesce(current_setting('miniflow.inbox_notify', true), '') <> 'on' THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP = 'INSERT' THEN
+    PERFORM pg_notify('wf_task_inbox', 'I|' || NEW.task_id || '|'
+        || (extract(epoch from NEW.created_at) * 1000000)::bigint || '|' || NEW.principal);
+    RETURN NEW;
+  END IF;
+  PERFORM pg_notify('wf_task_inbox', 'D|' || OLD.task_id || '|'
+      || (extract(epoch from OLD.created_at) * 1000000)::bigint || '|' || OLD.principal);
+  RETURN OLD;
+END; $$ LANGUAGE plpgsql;
@@ -0,0 +1,3 @@
+-- Event numbers for miniflow.events.variables.mode=full: taken without locking or updating the
+-- instance row. Starts at 2 because an instance's created event is always seq 1 (wf_instance.event_seq).
+CREATE SEQUENCE IF NOT EXISTS wf_event_seq START WITH 2;
@@ -0,0 +1,5 @@
+-- Page orders of ReportController: a process's instances in one status by instance_id, and the task
+-- counts of one assignee across processes (the primary key of wf_report_task_count leads with process_id)
+CREATE INDEX IF NOT EXISTS wf_report_instance_status_id_idx ON wf_report_instance(process_id, status, instance_id);
+DROP INDEX IF EXISTS wf_report_instance_status_idx;
+CREATE INDEX IF NOT EXISTS wf_report_task_count_assignee_idx ON wf_report_task_count(assignee, process_id, node_id);
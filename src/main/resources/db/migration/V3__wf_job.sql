@@ -0,0 +1,19 @@
+-- Durable continuations for service tasks run by the async job executor
+CREATE TABLE IF NOT EXISTS wf_job (
+  id            uuid PRIMARY KEY,
+  instance_id   uuid NOT NULL REFERENCES wf_instance(id) ON DELETE CASCADE,
+  token_id      uuid REFERENCES wf_token(id) ON DELETE SET NULL,
+  node_id       text NOT NULL,
+  state         text NOT NULL CHECK (state IN ('PENDING','RUNNING','DONE','FAILED')),
+  attempts      int  NOT NULL DEFAULT 0,
+  last_error    text,
+  locked_by     text,
+  locked_until  timestamptz,
+  due_at        timestamptz NOT NULL DEFAULT now(),
+  created_at    timestamptz NOT NULL DEFAULT now(),
+  updated_at    timestamptz NOT NULL DEFAULT now()
+);
+
+-- claim scan: due PENDING jobs and expired RUNNING locks
+CREATE INDEX IF NOT EXISTS wf_job_claim_idx ON wf_job(state, due_at) WHERE state IN ('PENDING','RUNNING');
+CREATE INDEX IF NOT EXISTS wf_job_instance_idx ON wf_job(instance_id, state);
@@ -0,0 +1,2 @@
+-- Optimistic locking for concurrent commands on the same instance
+ALTER TABLE wf_instance ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
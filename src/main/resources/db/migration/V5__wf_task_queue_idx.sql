@@ -0,0 +1,4 @@
+-- Claim-next: unassigned OPEN tasks in queue order
+CREATE INDEX IF NOT EXISTS wf_task_queue_idx
+  ON wf_task (priority DESC NULLS LAST, due_date_time ASC NULLS LAST, created_at)
+  WHERE state = 'OPEN' AND assignee IS NULL;
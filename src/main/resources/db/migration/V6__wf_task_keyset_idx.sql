@@ -0,0 +1,10 @@
+-- Keyset pagination: one index per list order, ending in id so the cursor is a strict row-value bound
+
+-- My tasks: lower(assignee), then due date (undated last), then id
+CREATE INDEX IF NOT EXISTS wf_task_assignee_due_idx
+  ON wf_task (lower(assignee), (coalesce(due_date_time, 'infinity'::timestamptz)), id);
+
+-- Claimable tasks: unassigned OPEN tasks, oldest first
+CREATE INDEX IF NOT EXISTS wf_task_claimable_created_idx
+  ON wf_task (created_at, id)
+  WHERE state = 'OPEN' AND assignee IS NULL;
@@ -0,0 +1,39 @@
+-- Inbox read model: one row per (candidate, claimable task), summary columns copied in.
+-- principal = type || ':' || candidate, e.g. 'U:alice', 'G:nurses'
+CREATE TABLE IF NOT EXISTS wf_task_inbox (
+  principal     text NOT NULL,
+  task_id       uuid NOT NULL REFERENCES wf_task(id) ON DELETE CASCADE,
+  instance_id   uuid NOT NULL,
+  process_id    text NOT NULL,
+  process_name  text,
+  node_id       text NOT NULL,
+  name          text NOT NULL,
+  business_key  text,
+  form_key      text,
+  priority      int,
+  created_at    timestamptz NOT NULL,
+  due_date_time timestamptz,
+  PRIMARY KEY (principal, task_id)
+);
+
+-- worklist order per principal
+CREATE INDEX IF NOT EXISTS wf_task_inbox_principal_created_idx
+  ON wf_task_inbox (principal, created_at, task_id);
+
+-- unlisting on claim/complete
+CREATE INDEX IF NOT EXISTS wf_task_inbox_task_idx ON wf_task_inbox (task_id);
+
+-- backfill claimable tasks
+INSERT INTO wf_task_inbox (principal, task_id, instance_id, process_id, process_name,
+                           node_id, name, business_key, form_key, priority,
+                           created_at, due_date_time)
+SELECT c.type || ':' || c.candidate, t.id, t.instance_id, i.process_id, p.name,
+       t.node_id, t.name, i.business_key, t.form_key, t.priority,
+       t.created_at, t.due_date_time
+  FROM wf_task t
+  JOIN wf_instance i       ON i.id = t.instance_id
+  JOIN wf_process p        ON p.process_id = i.process_id
+  JOIN wf_task_candidate c ON c.task_id = t.id
+ WHERE t.state = 'OPEN'
+   AND t.assignee IS NULL
+ON CONFLICT (principal, task_id) DO NOTHING;
@@ -0,0 +1,16 @@
+-- Change feed for node-local claimable-task indexes (ClaimableTaskIndex).
+-- Payload: op|task_id|created_at epoch micros|principal  (op: I = listed, D = unlisted)
+CREATE OR REPLACE FUNCTION wf_task_inbox_notify() RETURNS trigger AS $$
+BEGIN
+  IF TG_OP = 'INSERT' THEN
+    PERFORM pg_notify('wf_task_inbox', 'I|' || NEW.task_id || '|'
+        || (extract(epoch from NEW.created_at) * 1000000)::bigint || '|' || NEW.principal);
+    RETURN NEW;
+  END IF;
+  PERFORM pg_notify('wf_task_inbox', 'D|' || OLD.task_id || '|'
+      || (extract(epoch from OLD.created_at) * 1000000)::bigint || '|' || OLD.principal);
+  RETURN OLD;
+END; $$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_wf_task_inbox_notify AFTER INSERT OR DELETE ON wf_task_inbox
+FOR EACH ROW EXECUTE FUNCTION wf_task_inbox_notify();
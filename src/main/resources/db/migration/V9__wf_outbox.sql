@@ -0,0 +1,8 @@
+-- Transactional outbox: events written with the engine transaction, relayed to Kafka by OutboxRelay
+CREATE TABLE IF NOT EXISTS wf_outbox (
+  id          bigserial PRIMARY KEY,         -- relay order
+  topic       text NOT NULL,
+  msg_key     text,                          -- Kafka key (instance id)
+  payload     bytea NOT NULL,                -- Avro binary datum, schema chosen by topic
+  created_at  timestamptz NOT NULL DEFAULT now()
+);
@@ -0,0 +1,59 @@
+package com.miniflow.avro;
+
+import com.miniflow.events.WorkflowStepEvent;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkflowEventCodecTest {
+
+    private static WorkflowStepEvent step(Map<String, Object> vars) {
+        return new WorkflowStepEvent("e-1", "TASK_CREATED", 1700000000000L, "i-1", "p-1", null,
+                "review", "Review", "userTask", "t-1", "OPEN", vars, 7L, false, List.of("gone"), "alice");
+    }
+
+    @Test
+    public void testRoundTripReusesThreadBuffers() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("amount", "42");
+        WorkflowStepEvent first = step(vars);
+        WorkflowStepEvent second = step(null);
+
+        byte[] a = WorkflowEventCodec.encode(first);
+        byte[] b = WorkflowEventCodec.encode(second);
+
+        assertEquals(first, WorkflowEventCodec.decode(a, WorkflowStepEvent.class));
+        assertEquals(second, WorkflowEventCodec.decode(b, WorkflowStepEvent.class));
+        assertNotEquals(a.length, b.length); // the second encode must not carry bytes of the first
+    }
+
+    @Test
+    public void testPayloadIsPlainDatumReadableWithGenericReader() throws Exception {
+        InstanceEvent ev = new InstanceEvent("e-1", "INSTANCE_CREATED", 1L, "i-1", "p-1", "bk", "ACTIVE", Map.of("k", "v"), 1L, true, List.of());
+
+        byte[] bytes = WorkflowEventCodec.encode(ev);
+        GenericRecord generic = new GenericDatumReader<GenericRecord>(InstanceEvent.getClassSchema(), InstanceEvent.getClassSchema(), GenericData.get())
+                .read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+
+        assertEquals("i-1", generic.get("instanceId").toString());
+        assertEquals("ACTIVE", generic.get("status").toString());
+    }
+
+    @Test
+    public void testLargeRecordStillEncodes() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("blob", "x".repeat(100_000));
+
+        byte[] bytes = WorkflowEventCodec.encode(step(vars));
+        assertEquals(vars, WorkflowEventCodec.decode(bytes, WorkflowStepEvent.class).getVariables());
+        assertTrue(WorkflowEventCodec.encode(step(null)).length < 100);
+    }
+}
@@ -0,0 +1,101 @@
+package com.miniflow.avro;
+
+import com.miniflow.events.WorkflowStepEvent;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step-event encoding: the former GenericRecordBuilder path against the generated-class path of
+ * {@link WorkflowEventCodec}. Not a unit test; run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.miniflow.avro.WorkflowEventEncodingBenchmark}
+ * or from the IDE, and compare both score and {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkflowEventEncodingBenchmark {
+
+    private static final Schema STEP_SCHEMA = WorkflowStepEvent.getClassSchema();
+
+    private final GenericDatumWriter<GenericRecord> sharedGenericWriter = new GenericDatumWriter<>(STEP_SCHEMA);
+    private final String instanceId = UUID.randomUUID().toString();
+    private final String taskId = UUID.randomUUID().toString();
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setup() {
+        variables = new HashMap<>();
+        for (int i = 0; i < 12; i++) variables.put("var" + i, "value-" + i);
+    }
+
+    /** Builder + per-call writer and encoder, as events were encoded before the codec. */
+    @Benchmark
+    public byte[] genericPerCallWriter() throws IOException {
+        return encodeGeneric(new GenericDatumWriter<>(STEP_SCHEMA), genericRecord());
+    }
+
+    /** Builder with a shared writer, still allocating a stream and encoder per event. */
+    @Benchmark
+    public byte[] genericSharedWriter() throws IOException {
+        return encodeGeneric(sharedGenericWriter, genericRecord());
+    }
+
+    @Benchmark
+    public byte[] specificCodec() {
+        return WorkflowEventCodec.encode(new WorkflowStepEvent(
+                UUID.randomUUID().toString(), "TASK_CREATED", System.currentTimeMillis(),
+                instanceId, "order-process", "BK-1", "review", "Review order", "userTask",
+                taskId, "OPEN", variables, 0L, true, List.of(), null));
+    }
+
+    private GenericRecord genericRecord() {
+        return new GenericRecordBuilder(STEP_SCHEMA)
+                .set("eventId", UUID.randomUUID().toString())
+                .set("eventType", "TASK_CREATED")
+                .set("timestamp", System.currentTimeMillis())
+                .set("instanceId", instanceId)
+                .set("processId", "order-process")
+                .set("businessKey", "BK-1")
+                .set("nodeId", "review")
+                .set("nodeName", "Review order")
+                .set("nodeType", "userTask")
+                .set("taskId", taskId)
+                .set("status", "OPEN")
+                .set("variables", variables)
+                .build();
+    }
+
+    private static byte[] encodeGeneric(GenericDatumWriter<GenericRecord> writer, GenericRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        BinaryEncoder enc = EncoderFactory.get().binaryEncoder(out, null);
+        writer.write(record, enc);
+        enc.flush();
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WorkflowEventEncodingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
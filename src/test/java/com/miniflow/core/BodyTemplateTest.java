@@ -0,0 +1,51 @@
+package com.miniflow.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BodyTemplateTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    public void testBarePlaceholdersKeepJsonTypes() throws Exception {
+        BodyTemplate t = BodyTemplate.compile("{\"age\": ${age}, \"ok\": ${ok}, \"tags\": ${tags}, \"missing\": ${nope}}");
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("age", 42);
+        vars.put("ok", true);
+        vars.put("tags", List.of("a", "b"));
+
+        Map<?, ?> body = json.readValue(t.render(vars, json), Map.class);
+        assertEquals(42, body.get("age"));
+        assertEquals(true, body.get("ok"));
+        assertEquals(List.of("a", "b"), body.get("tags"));
+        assertTrue(body.containsKey("missing"));
+        assertNull(body.get("missing"));
+    }
+
+    @Test
+    public void testQuotedPlaceholdersAreEscaped() throws Exception {
+        BodyTemplate t = BodyTemplate.compile("{\"msg\": \"Dear ${name}, id=${id}\", \"empty\": \"${nope}\"}");
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("name", "O\"Brien");
+        vars.put("id", 7);
+
+        Map<?, ?> body = json.readValue(t.render(vars, json), Map.class);
+        assertEquals("Dear O\"Brien, id=7", body.get("msg"));
+        assertEquals("", body.get("empty"));
+    }
+
+    @Test
+    public void testTemplateWithoutPlaceholdersIsReturnedAsIs() {
+        BodyTemplate t = BodyTemplate.compile("{\"a\": 1}");
+        assertFalse(t.hasPlaceholders());
+        assertEquals("{\"a\": 1}", t.render(Map.of(), json));
+        assertEquals("", BodyTemplate.compile(null).render(null, json));
+    }
+}
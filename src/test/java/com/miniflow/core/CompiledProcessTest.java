@@ -0,0 +1,58 @@
+package com.miniflow.core;
+
+import com.miniflow.core.EngineModel.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledProcessTest {
+
+    @Test
+    public void testOrdinalsAndEdges() {
+        ProcessDefinition def = TestUtils.createGatewayProcessDefinition();
+        CompiledProcess cp = CompiledProcess.compile(def);
+
+        assertEquals(def.getNodes().size(), cp.size());
+        assertEquals("start", cp.startId());
+        for (Node n : def.getNodes()) {
+            int ord = cp.ordinalOf(n.id);
+            assertEquals(n.id, cp.nodeId(ord));
+            assertEquals(n.type, cp.type(ord));
+            assertEquals(n.outgoing.size(), cp.outTargets[ord].length);
+            assertEquals(n.incoming.size(), cp.incomingCount[ord]);
+            for (int i = 0; i < n.outgoing.size(); i++) {
+                assertEquals(n.outgoing.get(i).to, cp.nodeId(cp.outTargets[ord][i]));
+            }
+        }
+        assertEquals(2, cp.maxOutgoing);
+        assertThrows(IllegalStateException.class, () -> cp.ordinalOf("missing"));
+    }
+
+    @Test
+    public void testParallelGatewayModes() {
+        CompiledProcess cp = CompiledProcess.compile(TestUtils.createParallelProcessDefinition());
+
+        assertEquals(CompiledProcess.GatewayMode.FORK, cp.gatewayModes[cp.ordinalOf("fork")]);
+        assertEquals(CompiledProcess.GatewayMode.JOIN, cp.gatewayModes[cp.ordinalOf("join")]);
+        assertEquals(2, cp.incomingCount[cp.ordinalOf("join")]);
+        assertEquals("end", cp.nodeId(cp.requireSingleOutgoing(cp.ordinalOf("join"))));
+        assertThrows(IllegalStateException.class, () -> cp.requireSingleOutgoing(cp.ordinalOf("fork")));
+    }
+
+    @Test
+    public void testUserTaskPropsResolvedAtCompileTime() {
+        ProcessDefinition def = TestUtils.createSimpleProcessDefinition();
+        Node task = def.getNode("userTask");
+        task.props.put("camunda.assignee", "${doctor}");
+        task.props.put("zeebe.assignmentDefinition.candidateGroups", "Nurses,Lab");
+        task.props.put("form.external", "forms/review");
+
+        CompiledProcess cp = CompiledProcess.compile(def);
+        CompiledProcess.UserTaskSpec ut = cp.userTasks[cp.ordinalOf("userTask")];
+
+        assertEquals("forms/review", ut.formKey);
+        assertArrayEquals(new String[]{"${doctor}"}, ut.assigneeExprs);
+        assertEquals("Nurses,Lab", ut.candidateGroups);
+        assertNull(ut.candidateUsers);
+    }
+}
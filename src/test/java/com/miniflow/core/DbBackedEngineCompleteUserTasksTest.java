@@ -0,0 +1,135 @@
+package com.miniflow.core;
+
+import com.miniflow.persist.EnginePersistencePort;
+import com.miniflow.persist.entity.WfInstance;
+import com.miniflow.persist.entity.WfTask;
+import com.miniflow.persist.repo.WfInstanceRepo;
+import com.miniflow.persist.repo.WfProcessRepo;
+import com.miniflow.persist.repo.WfTaskRepo;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class DbBackedEngineCompleteUserTasksTest {
+
+    /** Keeps one transaction at a time and counts how each one ended. */
+    static final class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+        static final class Tx implements SmartTransactionObject {
+            boolean active;
+            boolean rollbackOnly;
+
+            @Override
+            public boolean isRollbackOnly() {
+                return rollbackOnly;
+            }
+
+            @Override
+            public void flush() {
+            }
+        }
+
+        private Tx current;
+        int commits;
+        int rollbacks;
+
+        @Override
+        protected Object doGetTransaction() {
+            return current != null ? current : new Tx();
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return ((Tx) transaction).active;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            current = (Tx) transaction;
+            current.active = true;
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            commits++;
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            rollbacks++;
+        }
+
+        @Override
+        protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+            ((Tx) status.getTransaction()).rollbackOnly = true;
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            current = null;
+        }
+    }
+
+    private final RecordingTransactionManager txm = new RecordingTransactionManager();
+    private final WfInstanceRepo instanceRepo = mock(WfInstanceRepo.class);
+    private final WfTaskRepo taskRepo = mock(WfTaskRepo.class);
+    private final DbBackedEngine engine = new DbBackedEngine(mock(EnginePersistencePort.class), instanceRepo, taskRepo,
+            mock(WfProcessRepo.class), new HttpServiceTaskConnector(), new JavaDelegateRegistry(null),
+            new CommandRetry(txm, 3, 0), new InstanceMailbox(false, 1));
+
+    // one open task whose instance belongs to a process this engine never deployed
+    private WfTask failingTask() {
+        WfInstance i = new WfInstance();
+        i.id = UUID.randomUUID();
+        i.processId = "ghost";
+        WfTask t = new WfTask();
+        t.id = UUID.randomUUID();
+        t.instanceId = i.id;
+        t.nodeId = "review";
+        t.state = "OPEN";
+        when(taskRepo.findAllById(any())).thenReturn(List.of(t));
+        when(instanceRepo.findAllById(any())).thenReturn(List.of(i));
+        return t;
+    }
+
+    @Test
+    public void testFailingGroupIsReportedWhenTheBatchOwnsItsTransaction() {
+        WfTask t = failingTask();
+        UUID missing = UUID.randomUUID();
+
+        List<DbBackedEngine.TaskCompletionResult> results = engine.completeUserTasks(List.of(
+                new DbBackedEngine.TaskCompletion(t.id, Map.of()),
+                new DbBackedEngine.TaskCompletion(missing, Map.of())));
+
+        assertEquals("FAILED", results.get(0).status());
+        assertEquals("Process not deployed: ghost", results.get(0).error());
+        assertEquals("NOT_FOUND", results.get(1).status());
+        assertEquals(1, txm.rollbacks); // the attempt with the failing group
+        assertEquals(1, txm.commits);   // the re-run without it
+    }
+
+    @Test
+    public void testFailingGroupFailsTheCallersTransactionWithItsOwnError() {
+        WfTask t = failingTask();
+        TransactionTemplate outer = new TransactionTemplate(txm);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> outer.executeWithoutResult(
+                s -> engine.completeUserTasks(List.of(new DbBackedEngine.TaskCompletion(t.id, Map.of())))));
+
+        assertEquals("Process not deployed: ghost", e.getMessage());
+        assertEquals(0, txm.commits);
+        assertEquals(1, txm.rollbacks);
+        verify(taskRepo, times(1)).findAllById(any()); // not re-run inside the doomed transaction
+    }
+}
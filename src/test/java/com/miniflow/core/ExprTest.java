@@ -1,6 +1,7 @@
 package com.miniflow.core;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.expression.Expression;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -68,6 +69,54 @@ public class ExprTest {
         // Test with null expression
         assertNull(Expr.eval(null, vars));
     }
+
+    @Test
+    public void testCompiledExpressionsAreCached() {
+        Expression first = Expr.compile("#{status == 'APPROVED'}");
+        assertSame(first, Expr.compile("#{status == 'APPROVED'}"));
+        assertNull(Expr.compile("  "));
+        assertThrows(IllegalArgumentException.class, () -> Expr.compile("status == == 'x'"));
+
+        // same expression, different variable maps and types
+        Map<String, Object> vars = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            vars.put("status", i % 2 == 0 ? "APPROVED" : "PENDING");
+            assertEquals(i % 2 == 0, Expr.evalLogical(first, vars));
+        }
+        vars.put("status", 42);
+        assertFalse(Expr.evalLogical(first, vars));
+    }
+
+    @Test
+    public void testConditionReadsMapKeysWithoutRewriting() {
+        EngineModel.Condition c = Expr.condition("#{a > 1 && amount > 1000 && a_b == 'x'}");
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", 2);
+        vars.put("amount", 1500);
+        vars.put("a_b", "x");
+        assertTrue(c.eval(vars));
+
+        vars.remove("amount");
+        assertFalse(c.eval(vars));
+        assertEquals("#{a > 1 && amount > 1000 && a_b == 'x'}", c.toString());
+    }
+
+    @Test
+    public void testHashVariablesReadTheProcessVariables() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("amount", 10);
+        vars.put("status", "APPROVED");
+
+        assertTrue(Expr.evalLogical("#amount > 5", vars));
+        assertTrue(Expr.evalLogical("#{#status == 'APPROVED' && amount > 5}", vars));
+        assertFalse(Expr.evalLogical("#missing > 5", vars));
+
+        // the same compiled expression sees each call's own map
+        EngineModel.Condition c = Expr.condition("#amount > 5");
+        vars.put("amount", 3);
+        assertFalse(c.eval(vars));
+        assertTrue(c.eval(Map.of("amount", 6)));
+    }
 }
 
 // Made with Bob
@@ -0,0 +1,93 @@
+package com.miniflow.core;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpServiceTaskConnectorTest {
+
+    private static final String BODY = """
+            {"meta": {"big": [1, 2, 3, {"deep": true}]},
+             "data": {"id": "A-7", "a/b": 5, "items": [{"sku": "x"}, {"sku": "y"}]},
+             "total": 12.5}""";
+
+    private final HttpServiceTaskConnector connector = new HttpServiceTaskConnector();
+    private HttpServer server;
+    private String url;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/order", ex -> {
+            byte[] out = BODY.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().add("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, out.length);
+            ex.getResponseBody().write(out);
+            ex.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/order";
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testMappedPointersAreReadFromTheStream() {
+        Map<String, String> props = new HashMap<>();
+        props.put("http.url", url);
+        props.put("http.method", "GET");
+        props.put("http.response.map.orderId", "data.id");
+        props.put("http.response.map.secondSku", "/data/items/1/sku");
+        props.put("http.response.map.items", "/data/items");
+        props.put("http.response.map.slashed", "/data/a~1b");
+        props.put("http.response.map.total", "/total");
+        props.put("http.response.map.missing", "/data/nope");
+        props.put("http.response.statusVar", "status");
+        connector.prepare(props);
+
+        Map<String, Object> vars = new HashMap<>();
+        connector.execute(props, vars);
+
+        assertEquals("A-7", vars.get("orderId"));
+        assertEquals("y", vars.get("secondSku"));
+        assertEquals(List.of(Map.of("sku", "x"), Map.of("sku", "y")), vars.get("items"));
+        assertEquals(5, vars.get("slashed"));
+        assertEquals(12.5, vars.get("total"));
+        assertTrue(vars.containsKey("missing"));
+        assertNull(vars.get("missing"));
+        assertEquals(200, vars.get("status"));
+    }
+
+    @Test
+    public void testWholeResponseAndPointersTogether() {
+        Map<String, String> props = Map.of("http.url", url, "http.method", "GET",
+                "http.response.var", "response", "http.response.map.orderId", "/data/id");
+
+        Map<String, Object> vars = new HashMap<>();
+        connector.execute(props, vars);
+
+        assertEquals("A-7", vars.get("orderId"));
+        assertEquals(12.5, ((Map<?, ?>) vars.get("response")).get("total"));
+    }
+
+    @Test
+    public void testRestrictedHeadersAreRejectedAtPrepare() {
+        assertThrows(IllegalArgumentException.class,
+                () -> connector.prepare(Map.of("http.url", url, "http.header.Host", "evil.example")));
+        assertThrows(IllegalArgumentException.class,
+                () -> connector.prepare(Map.of("http.url", url, "http.header.Content-Length", "1")));
+        connector.prepare(Map.of("http.url", url, "http.header.X-Tenant", "t1"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.miniflow.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstanceMailboxTest {
+
+    private final InstanceMailbox mailbox = new InstanceMailbox(true, 4);
+
+    @AfterEach
+    public void tearDown() {
+        mailbox.stop();
+    }
+
+    @Test
+    public void testCommandsForOneInstanceNeverOverlap() throws Exception {
+        UUID iid = UUID.randomUUID();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                int n = i;
+                results.add(callers.submit(() -> mailbox.call(iid, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    return n;
+                })));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void testExceptionsReachTheCallerAndNestedCallsRunInline() {
+        UUID iid = UUID.randomUUID();
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> mailbox.call(iid, () -> { throw new IllegalStateException("boom"); }));
+        assertEquals("boom", e.getMessage());
+
+        // a nested call for the same lane would deadlock if it were queued
+        assertEquals("inner", mailbox.call(iid, () -> mailbox.call(iid, () -> "inner")));
+    }
+
+    @Test
+    public void testDisabledMailboxRunsInline() {
+        InstanceMailbox off = new InstanceMailbox(false, 4);
+        Thread caller = Thread.currentThread();
+        assertSame(caller, off.call(UUID.randomUUID(), Thread::currentThread));
+    }
+}
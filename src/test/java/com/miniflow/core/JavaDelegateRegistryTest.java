@@ -0,0 +1,91 @@
+package com.miniflow.core;
+
+import com.miniflow.core.DbBackedEngine.ExecutionContext;
+import com.miniflow.core.DbBackedEngine.JavaDelegate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class JavaDelegateRegistryTest {
+
+    @StatelessDelegate
+    public static class SharedDelegate implements JavaDelegate {
+        @Override
+        public void execute(ExecutionContext ctx) { }
+    }
+
+    public static class FreshDelegate implements JavaDelegate {
+        @Override
+        public void execute(ExecutionContext ctx) { }
+    }
+
+    static class PackagePrivateDelegate implements JavaDelegate {
+        @Override
+        public void execute(ExecutionContext ctx) { }
+    }
+
+    private static Map<String, String> javaClass(Class<?> cl) {
+        return Map.of("java.class", cl.getName());
+    }
+
+    @Test
+    public void testStatelessDelegateIsShared() {
+        JavaDelegateRegistry registry = new JavaDelegateRegistry(null);
+        JavaDelegate a = registry.delegate("p", javaClass(SharedDelegate.class));
+        assertSame(a, registry.delegate("p", javaClass(SharedDelegate.class)));
+    }
+
+    @Test
+    public void testStatefulDelegateIsCreatedPerCall() {
+        JavaDelegateRegistry registry = new JavaDelegateRegistry(null);
+        JavaDelegate a = registry.delegate("p", javaClass(FreshDelegate.class));
+        JavaDelegate b = registry.delegate("p", javaClass(FreshDelegate.class));
+        assertInstanceOf(FreshDelegate.class, a);
+        assertNotSame(a, b);
+        assertInstanceOf(PackagePrivateDelegate.class, registry.delegate("p", javaClass(PackagePrivateDelegate.class)));
+    }
+
+    @Test
+    public void testInvalidClassesFailOnPrepare() {
+        JavaDelegateRegistry registry = new JavaDelegateRegistry(null);
+        assertThrows(IllegalArgumentException.class, () -> registry.prepare(List.of(Map.of("java.class", "com.example.Missing"))));
+        assertThrows(IllegalArgumentException.class, () -> registry.prepare(List.of(Map.of("java.class", String.class.getName()))));
+        assertThrows(IllegalArgumentException.class, () -> registry.prepare(List.of(Map.of("java.bean", "missing"))));
+    }
+
+    @Test
+    public void testRedeployGetsItsOwnDelegates() {
+        JavaDelegateRegistry registry = new JavaDelegateRegistry(null);
+        registry.activate("p", registry.prepare(List.of(javaClass(SharedDelegate.class))));
+        JavaDelegate first = registry.delegate("p", javaClass(SharedDelegate.class));
+        assertSame(first, registry.delegate("p", javaClass(SharedDelegate.class)));
+        assertNotSame(first, registry.delegate("q", javaClass(SharedDelegate.class)));
+
+        var redeployed = registry.prepare(List.of(javaClass(SharedDelegate.class)));
+        assertSame(first, registry.delegate("p", javaClass(SharedDelegate.class))); // not active yet
+        registry.activate("p", redeployed);
+        assertNotSame(first, registry.delegate("p", javaClass(SharedDelegate.class)));
+    }
+
+    @Test
+    public void testSpringBeansAreResolvedOnce() {
+        ListableBeanFactory beans = mock(ListableBeanFactory.class);
+        FreshDelegate bean = new FreshDelegate();
+        when(beans.getBeanNamesForType(FreshDelegate.class)).thenReturn(new String[]{"fresh"});
+        when(beans.containsBean("fresh")).thenReturn(true);
+        when(beans.isTypeMatch("fresh", JavaDelegate.class)).thenReturn(true);
+        when(beans.isSingleton("fresh")).thenReturn(true);
+        when(beans.getBean("fresh", JavaDelegate.class)).thenReturn(bean);
+
+        JavaDelegateRegistry registry = new JavaDelegateRegistry(beans);
+        assertSame(bean, registry.delegate("p", javaClass(FreshDelegate.class)));
+        assertSame(bean, registry.delegate("p", Map.of("java.bean", "fresh")));
+        assertSame(bean, registry.delegate("p", javaClass(FreshDelegate.class)));
+        verify(beans, times(2)).getBean("fresh", JavaDelegate.class); // once per cache key
+    }
+}
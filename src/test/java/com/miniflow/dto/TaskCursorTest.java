@@ -0,0 +1,38 @@
+package com.miniflow.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaskCursorTest {
+
+    @Test
+    public void testRoundTripKeepsMicroseconds() {
+        UUID id = UUID.randomUUID();
+        OffsetDateTime due = OffsetDateTime.parse("2025-03-01T10:15:30.123456+01:00");
+
+        TaskCursor c = TaskCursor.decode(TaskCursor.after(due, id).encode());
+        assertEquals(id, c.id());
+        assertEquals(due, OffsetDateTime.parse(c.sortKey()));
+    }
+
+    @Test
+    public void testMissingDateSortsAsInfinity() {
+        UUID id = UUID.randomUUID();
+        TaskCursor c = TaskCursor.decode(TaskCursor.after(null, id).encode());
+        assertEquals(TaskCursor.NO_DATE, c.sortKey());
+        assertEquals(id, c.id());
+    }
+
+    @Test
+    public void testBlankCursorStartsAtBeginningAndGarbageIsRejected() {
+        assertEquals(TaskCursor.start(), TaskCursor.decode(null));
+        assertEquals(TaskCursor.start(), TaskCursor.decode(" "));
+        assertThrows(IllegalArgumentException.class, () -> TaskCursor.decode("not-a-cursor"));
+        String badDate = java.util.Base64.getUrlEncoder().encodeToString(("yesterday|" + UUID.randomUUID()).getBytes());
+        assertThrows(IllegalArgumentException.class, () -> TaskCursor.decode(badDate));
+    }
+}
@@ -0,0 +1,37 @@
+package com.miniflow.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VariableProjectionTest {
+
+    @Test
+    public void testParseModes() {
+        assertSame(VariableProjection.ALL, VariableProjection.parse("*", VariableProjection.NONE));
+        assertSame(VariableProjection.NONE, VariableProjection.parse("-", VariableProjection.ALL));
+        assertSame(VariableProjection.ALL, VariableProjection.parse(null, VariableProjection.ALL));
+        assertSame(VariableProjection.NONE, VariableProjection.parse("  ", VariableProjection.NONE));
+    }
+
+    @Test
+    public void testParseKeyList() {
+        VariableProjection p = VariableProjection.parse(" patientId, ward ,,patientId", VariableProjection.ALL);
+        assertEquals(VariableProjection.Mode.KEYS, p.mode());
+        assertEquals(List.of("patientId", "ward"), p.keys());
+        assertArrayEquals(new String[]{"patientId", "ward"}, p.keyArray());
+        assertSame(VariableProjection.NONE, VariableProjection.parse(",", VariableProjection.ALL));
+    }
+
+    @Test
+    public void testApplyToLoadedVariables() {
+        Map<String, Object> vars = Map.of("patientId", "p1", "ward", 3, "notes", "long text");
+        assertSame(vars, VariableProjection.ALL.apply(vars));
+        assertEquals(Map.of(), VariableProjection.NONE.apply(vars));
+        assertEquals(Map.of("ward", 3), VariableProjection.parse("ward,missing", VariableProjection.ALL).apply(vars));
+        assertEquals(Map.of(), VariableProjection.parse("ward", VariableProjection.ALL).apply((Map<String, Object>) null));
+    }
+}
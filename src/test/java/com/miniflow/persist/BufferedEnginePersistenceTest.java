@@ -0,0 +1,182 @@
+package com.miniflow.persist;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class BufferedEnginePersistenceTest {
+
+    private EnginePersistencePort delegate;
+    private UUID iid;
+    private BufferedEnginePersistence uow;
+
+    @BeforeEach
+    public void setup() {
+        delegate = mock(EnginePersistencePort.class);
+        iid = UUID.randomUUID();
+        when(delegate.activeTokens(iid)).thenReturn(List.of());
+        when(delegate.variables(iid)).thenReturn(new HashMap<>(Map.of("a", 1)));
+        uow = new BufferedEnginePersistence(delegate, iid);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTokenMovesAreFlushedOnce() {
+        UUID t = uow.createToken(iid, "start");
+        uow.moveToken(t, "svc1");
+        uow.moveToken(t, "svc2");
+        assertEquals(List.of(new EnginePersistencePort.TokenView(t, "svc2")), uow.activeTokens(iid));
+
+        uow.consumeToken(t);
+        assertTrue(uow.activeTokens(iid).isEmpty());
+
+        // nothing written before flush
+        verify(delegate, never()).createToken(any(), any());
+        verify(delegate, never()).moveToken(any(), any());
+        verify(delegate, never()).saveTokens(any(), any());
+
+        uow.flush();
+
+        ArgumentCaptor<Collection<EnginePersistencePort.TokenChange>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate, times(1)).saveTokens(eq(iid), captor.capture());
+        assertEquals(List.of(new EnginePersistencePort.TokenChange(t, "svc2", false, true)), List.copyOf(captor.getValue()));
+    }
+
+    @Test
+    public void testVariablesAndJoins() {
+        when(delegate.incrementJoin(iid, "join", 2)).thenReturn(1, 2);
+
+        uow.updateVariables(iid, cur -> { cur.put("b", 2); return cur; });
+        uow.updateVariables(iid, cur -> { cur.put("c", 3); return cur; });
+        assertEquals(Map.of("a", 1, "b", 2, "c", 3), uow.variables(iid));
+
+        // join counters are shared with other transactions, so they are not buffered
+        assertEquals(1, uow.incrementJoin(iid, "join", 2));
+        assertEquals(2, uow.incrementJoin(iid, "join", 2));
+        verify(delegate, times(2)).incrementJoin(iid, "join", 2);
+
+        uow.flush();
+
+        verify(delegate, times(1)).variables(iid);
+        verify(delegate, times(1)).mergeVariables(iid, new VariableDelta(Map.of("b", 2, "c", 3), Set.of()), 0L);
+        verify(delegate, never()).updateVariables(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnlyChangedVariablesAreWritten() {
+        when(delegate.variables(iid)).thenReturn(new HashMap<>(Map.of(
+                "a", 1, "gone", "x", "order", new HashMap<>(Map.of("qty", 1)))));
+        uow = new BufferedEnginePersistence(delegate, iid);
+
+        // rewriting identical values is not a change
+        uow.updateVariables(iid, cur -> { cur.put("a", 1); return cur; });
+        uow.flush();
+        verify(delegate, never()).mergeVariables(any(), any(), anyLong());
+
+        // nested in-place change, removal and a new key
+        uow.updateVariables(iid, cur -> {
+            ((Map<String, Object>) cur.get("order")).put("qty", 2);
+            cur.remove("gone");
+            cur.put("b", true);
+            return cur;
+        });
+        uow.flush();
+        verify(delegate).mergeVariables(iid, new VariableDelta(
+                Map.of("order", Map.of("qty", 2), "b", true), Set.of("gone")), 0L);
+
+        // already written: a second flush has nothing to do
+        uow.updateVariables(iid, cur -> cur);
+        uow.flush();
+        verify(delegate, times(1)).mergeVariables(any(), any(), anyLong());
+    }
+
+    @Test
+    public void testFlushChecksTheVersionReadBeforeAnyState() {
+        when(delegate.instanceVersion(iid)).thenReturn(7L);
+        doThrow(new OptimisticLockingFailureException("conflict"))
+                .when(delegate).mergeVariables(eq(iid), any(), eq(7L));
+
+        UUID t = uow.createToken(iid, "svc1");
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).instanceVersion(iid);
+        order.verify(delegate).activeTokens(iid);
+
+        // a token move alone still advances the version, and a conflict stops the flush before any write
+        assertThrows(OptimisticLockingFailureException.class, uow::flush);
+        verify(delegate).mergeVariables(iid, VariableDelta.none(), 7L);
+        verify(delegate, never()).saveTokens(any(), any());
+        assertNotNull(t);
+    }
+
+    @Test
+    public void testNewInstanceNeedsNoReadsOrVersionCheck() {
+        UUID fresh = UUID.randomUUID();
+        BufferedEnginePersistence b = BufferedEnginePersistence.forNewInstance(delegate, fresh, Map.of("a", 1));
+
+        UUID t = b.createToken(fresh, "start");
+        b.consumeToken(t);
+        assertEquals(Map.of("a", 1), b.variables(fresh));
+        assertFalse(b.hasOpenTasks(fresh));
+        assertFalse(b.hasOpenJobs(fresh));
+        b.markInstanceCompleted(fresh);
+        b.flush();
+
+        verify(delegate, never()).activeTokens(any());
+        verify(delegate, never()).variables(any());
+        verify(delegate, never()).instanceVersion(any());
+        verify(delegate, never()).hasOpenTasks(any());
+        verify(delegate, never()).mergeVariables(any(), any(), anyLong());
+        verify(delegate).saveTokens(eq(fresh), any());
+        verify(delegate).markInstanceCompleted(fresh);
+    }
+
+    @Test
+    public void testPendingTasksCountAsOpenAndCompletionIsDeferred() {
+        UUID t = uow.createToken(iid, "userTask");
+        uow.createUserTask(iid, t, "userTask", "Review", null, "alice", List.of(), List.of("doctors"), null, null);
+        uow.consumeToken(t);
+
+        assertTrue(uow.hasOpenTasks(iid));
+        uow.markInstanceCompleted(iid);
+        verify(delegate, never()).markInstanceCompleted(any());
+
+        uow.flush();
+
+        var order = inOrder(delegate);
+        order.verify(delegate).saveTokens(eq(iid), any());
+        order.verify(delegate).createUserTasks(List.of(new EnginePersistencePort.NewUserTask(iid, t, "userTask", "Review",
+                null, "alice", List.of(), List.of("doctors"), null, null)));
+        order.verify(delegate).markInstanceCompleted(iid);
+    }
+
+    @Test
+    public void testFlushAllWritesTheTasksOfAllUnitsInOneCall() {
+        List<BufferedEnginePersistence> units = new ArrayList<>();
+        List<EnginePersistencePort.NewUserTask> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            UUID id = UUID.randomUUID();
+            BufferedEnginePersistence b = BufferedEnginePersistence.forNewInstance(delegate, id, Map.of());
+            UUID t = b.createToken(id, "review");
+            b.createUserTask(id, t, "review", "Review", null, null, List.of(), List.of("clerks"), null, null);
+            units.add(b);
+            expected.add(new EnginePersistencePort.NewUserTask(id, t, "review", "Review", null, null,
+                    List.of(), List.of("clerks"), null, null));
+        }
+
+        BufferedEnginePersistence.flushAll(units);
+
+        verify(delegate, times(3)).saveTokens(any(), any());
+        verify(delegate, times(1)).createUserTasks(expected);
+        verify(delegate, never()).createUserTask(any(), any(), any(), any(), any(), any(), any(), any(), any(), any());
+        verify(delegate, never()).mergeVariables(any(), any(), anyLong());
+    }
+}
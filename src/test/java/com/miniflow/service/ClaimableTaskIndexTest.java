@@ -0,0 +1,79 @@
+package com.miniflow.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClaimableTaskIndexTest {
+
+    private final ClaimableTaskIndex index = new ClaimableTaskIndex(null);
+
+    private static UUID id(long msb, long lsb) {
+        return new UUID(msb, lsb);
+    }
+
+    @Test
+    public void testMergesPrincipalsInSqlOrderWithoutDuplicates() {
+        UUID a = id(1, 1), b = id(-1L, 0), c = id(2, 2); // b has the high bit set: after a, as in Postgres
+        index.apply("I|" + a + "|100|G:nurses");
+        index.apply("I|" + b + "|100|G:nurses");
+        index.apply("I|" + b + "|100|U:alice");
+        index.apply("I|" + c + "|50|U:alice");
+
+        List<String> caller = List.of("U:alice", "G:nurses", "G:unknown");
+        assertEquals(List.of(c, a, b), index.after(caller, null, 10).stream().map(ClaimableTaskIndex.Key::taskId).toList());
+        assertEquals(3, index.count(caller));
+        assertEquals(List.of(a), index.page(caller, 1, 1).stream().map(ClaimableTaskIndex.Key::taskId).toList());
+        assertEquals(List.of(b), index.after(caller, new ClaimableTaskIndex.Key(100, a), 10)
+                .stream().map(ClaimableTaskIndex.Key::taskId).toList());
+    }
+
+    @Test
+    public void testMultiPrincipalCountIsBoundedAndDeepOffsetsGoToSql() {
+        UUID shared = id(5, 5);
+        index.apply("I|" + shared + "|10|U:alice");
+        index.apply("I|" + shared + "|10|G:nurses");
+        index.apply("I|" + id(6, 6) + "|20|G:nurses");
+        index.apply("I|" + id(6, 6) + "|20|G:nurses"); // replayed insert is not counted twice
+        List<String> caller = List.of("U:alice", "G:nurses");
+
+        assertEquals(2, index.count(caller));
+        assertEquals(2, index.count(List.of("G:nurses")));
+        assertEquals(List.of(id(6, 6)), index.page(caller, 1, 10).stream().map(ClaimableTaskIndex.Key::taskId).toList());
+
+        index.exactCountLimit = 2;
+        assertEquals(3, index.count(caller)); // sum of list sizes, counting the shared task twice
+
+        index.apply("D|" + shared + "|10|U:alice");
+        index.apply("D|" + shared + "|10|U:alice");
+        assertEquals(0, index.count(List.of("U:alice")));
+        assertEquals(2, index.count(caller));
+
+        index.maxOffset = 100;
+        assertTrue(index.servesOffset(100));
+        assertFalse(index.servesOffset(101));
+    }
+
+    @Test
+    public void testUnlistRemovesOnlyThatPrincipal() {
+        UUID t = UUID.randomUUID();
+        index.apply("I|" + t + "|7|G:lab");
+        index.apply("I|" + t + "|7|U:bob");
+        index.apply("D|" + t + "|7|G:lab");
+
+        assertEquals(0, index.count(List.of("G:lab")));
+        assertEquals(1, index.count(List.of("U:bob")));
+    }
+
+    @Test
+    public void testKeyMicrosRoundTrip() {
+        OffsetDateTime at = OffsetDateTime.parse("2025-01-01T00:00:00.123456+02:00");
+        ClaimableTaskIndex.Key k = new ClaimableTaskIndex.Key(ClaimableTaskIndex.Key.micros(at), UUID.randomUUID());
+        assertTrue(at.isEqual(k.createdAt()));
+        assertEquals(k.createdMicros(), ClaimableTaskIndex.Key.micros(k.createdAt()));
+    }
+}
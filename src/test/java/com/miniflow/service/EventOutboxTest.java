@@ -0,0 +1,65 @@
+package com.miniflow.service;
+
+import com.miniflow.persist.repo.WfOutboxRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class EventOutboxTest {
+
+    private final WfOutboxRepo repo = mock(WfOutboxRepo.class);
+    private final EventOutbox outbox = new EventOutbox(repo);
+
+    @AfterEach
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(outbox);
+    }
+
+    @Test
+    public void testEventsOfATransactionAreWrittenOnceBeforeCommitInOrder() {
+        TransactionSynchronizationManager.initSynchronization();
+        outbox.append("t1", "i1", new byte[]{1});
+        outbox.append("t2", "i1", new byte[]{2, 3});
+        verifyNoInteractions(repo);
+
+        for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) s.beforeCommit(false);
+        for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations())
+            s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+        ArgumentCaptor<String[]> topics = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> keys = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> payloads = ArgumentCaptor.forClass(String[].class);
+        verify(repo, times(1)).appendAll(topics.capture(), keys.capture(), payloads.capture());
+        assertArrayEquals(new String[]{"t1", "t2"}, topics.getValue());
+        assertArrayEquals(new String[]{"i1", "i1"}, keys.getValue());
+        assertArrayEquals(new byte[]{2, 3}, Base64.getDecoder().decode(payloads.getValue()[1]));
+        assertNull(TransactionSynchronizationManager.getResource(outbox));
+    }
+
+    @Test
+    public void testRolledBackTransactionWritesNothing() {
+        TransactionSynchronizationManager.initSynchronization();
+        outbox.append("t1", "i1", new byte[]{1});
+        for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations())
+            s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(repo, never()).appendAll(any(), any(), any());
+    }
+
+    @Test
+    public void testOutsideATransactionEventsAreWrittenImmediately() {
+        outbox.append("t1", "i1", new byte[]{1});
+        verify(repo).appendAll(any(), any(), any());
+    }
+}
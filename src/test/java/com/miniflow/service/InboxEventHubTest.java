@@ -0,0 +1,41 @@
+package com.miniflow.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InboxEventHubTest {
+
+    private final InboxEventHub hub = new InboxEventHub(60_000, 0);
+
+    @AfterEach
+    public void tearDown() {
+        hub.stop();
+    }
+
+    @Test
+    public void testSubscribersAreIndexedByPrincipal() {
+        SseEmitter alice = hub.subscribe(List.of("U:alice", "G:nurses"));
+        SseEmitter bob = hub.subscribe(List.of("U:bob", "G:nurses"));
+
+        assertEquals(2, hub.subscriberCount("G:nurses"));
+        assertEquals(1, hub.subscriberCount("U:alice"));
+        assertEquals(0, hub.subscriberCount("G:doctors"));
+        assertEquals(Set.of(alice), hub.recipients(List.of("U:alice", "G:doctors")));
+        assertEquals(Set.of(alice, bob), hub.recipients(List.of("G:nurses")));
+    }
+
+    @Test
+    public void testSubscriberMatchingSeveralPrincipalsIsNotifiedOnce() {
+        SseEmitter alice = hub.subscribe(List.of("U:alice", "G:nurses", "G:lab"));
+
+        assertEquals(1, hub.recipients(List.of("U:alice", "G:nurses", "G:lab")).size());
+        assertTrue(hub.recipients(List.of("U:alice")).contains(alice));
+        assertTrue(hub.recipients(List.of()).isEmpty());
+    }
+}
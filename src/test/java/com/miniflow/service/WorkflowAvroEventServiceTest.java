@@ -0,0 +1,145 @@
+package com.miniflow.service;
+
+import com.miniflow.avro.InstanceEvent;
+import com.miniflow.avro.WorkflowEventCodec;
+import com.miniflow.events.WorkflowStepEvent;
+import com.miniflow.persist.entity.WfInstance;
+import com.miniflow.persist.entity.WfTask;
+import com.miniflow.persist.repo.WfInstanceRepo;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class WorkflowAvroEventServiceTest {
+
+    private final EventOutbox outbox = mock(EventOutbox.class);
+    private final WfInstanceRepo instanceRepo = mock(WfInstanceRepo.class);
+
+    private static List<Object[]> next(long seq, String changed, String removed) {
+        return List.<Object[]>of(new Object[]{seq, changed, removed});
+    }
+
+    private WorkflowStepEvent publishedStep() {
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        verify(outbox).append(eq("workflow-step-events-avro"), any(), payload.capture());
+        return WorkflowEventCodec.decode(payload.getValue(), WorkflowStepEvent.class);
+    }
+
+    private static WfInstance instance() {
+        WfInstance i = new WfInstance();
+        i.id = UUID.randomUUID();
+        i.processId = "p";
+        i.status = "RUNNING";
+        return i;
+    }
+
+    private static WfTask task(UUID instanceId) {
+        WfTask t = new WfTask();
+        t.id = UUID.randomUUID();
+        t.instanceId = instanceId;
+        t.nodeId = "review";
+        t.state = "OPEN";
+        return t;
+    }
+
+    @Test
+    public void testDeltaModeSendsOnlyAccumulatedChanges() {
+        WorkflowAvroEventService svc = new WorkflowAvroEventService(outbox, instanceRepo, "delta", 50);
+        WfInstance i = instance();
+        when(instanceRepo.nextEvent(i.id)).thenReturn(next(7, "{\"amount\": 42}", "[\"draft\"]"));
+
+        svc.publishTaskCreatedEvent(task(i.id), i, "USER_TASK", Map.of("amount", 42, "big", "x".repeat(1000)));
+
+        WorkflowStepEvent ev = publishedStep();
+        assertEquals(7L, ev.getSeq());
+        assertFalse(ev.getSnapshot());
+        assertEquals(Map.of("amount", "42"), ev.getVariables());
+        assertEquals(List.of("draft"), ev.getRemovedVariables());
+    }
+
+    @Test
+    public void testDeltaModeSendsFullMapOnFirstAndPeriodicSnapshots() {
+        WorkflowAvroEventService svc = new WorkflowAvroEventService(outbox, instanceRepo, "delta", 50);
+        WfInstance i = instance();
+        when(instanceRepo.nextEvent(i.id)).thenReturn(next(50, "{\"a\": 1}", "[]"));
+
+        svc.publishTaskCreatedEvent(task(i.id), i, "USER_TASK", Map.of("a", 1, "b", "two"));
+
+        WorkflowStepEvent ev = publishedStep();
+        assertTrue(ev.getSnapshot());
+        assertEquals(Map.of("a", "1", "b", "two"), ev.getVariables());
+        assertTrue(svc.isSnapshot(1));
+        assertFalse(svc.isSnapshot(2));
+        assertTrue(new WorkflowAvroEventService(outbox, instanceRepo, "delta", 0).isSnapshot(1));
+        assertFalse(new WorkflowAvroEventService(outbox, instanceRepo, "delta", 0).isSnapshot(100));
+    }
+
+    @Test
+    public void testFullModeKeepsFullMapButNumbersEvents() {
+        WorkflowAvroEventService svc = new WorkflowAvroEventService(outbox, instanceRepo, "full", 50);
+        WfInstance i = instance();
+        when(instanceRepo.nextEventSeq()).thenReturn(1234L);
+
+        svc.publishTaskCreatedEvent(task(i.id), i, "USER_TASK", Map.of("a", 1, "b", "two"));
+
+        WorkflowStepEvent ev = publishedStep();
+        assertEquals(1234L, ev.getSeq());
+        assertTrue(ev.getSnapshot());
+        assertEquals(2, ev.getVariables().size());
+        verify(instanceRepo, never()).nextEvent(any());
+        assertFalse(svc.tracksVariableChanges());
+    }
+
+    @Test
+    public void testCreatedEventTakesItsSeqFromTheRow() {
+        WorkflowAvroEventService svc = new WorkflowAvroEventService(outbox, instanceRepo, "delta", 50);
+        WfInstance i = instance();
+
+        svc.publishInstanceCreatedEvent(i, Map.of("a", 1));
+
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        verify(outbox).append(eq("workflow-instance-events-avro"), any(), payload.capture());
+        InstanceEvent ev = WorkflowEventCodec.decode(payload.getValue(), InstanceEvent.class);
+        assertEquals(1L, ev.getSeq());
+        assertTrue(ev.getSnapshot());
+        assertEquals(Map.of("a", "1"), ev.getVariables());
+        verifyNoInteractions(instanceRepo);
+        assertTrue(svc.tracksVariableChanges());
+    }
+
+    @Test
+    public void testUnknownInstanceGetsUntrackedFullEvent() {
+        WorkflowAvroEventService svc = new WorkflowAvroEventService(outbox, instanceRepo, "delta", 50);
+        WfInstance i = instance();
+        when(instanceRepo.nextEvent(i.id)).thenReturn(List.of());
+
+        svc.publishTaskCreatedEvent(task(i.id), i, "USER_TASK", Map.of("a", 1));
+
+        WorkflowStepEvent ev = publishedStep();
+        assertEquals(0L, ev.getSeq());
+        assertTrue(ev.getSnapshot());
+        assertEquals(Map.of("a", "1"), ev.getVariables());
+    }
+
+    @Test
+    public void testFailuresReachTheEngineTransaction() {
+        WorkflowAvroEventService svc = new WorkflowAvroEventService(outbox, instanceRepo, "delta", 50);
+        WfInstance i = instance();
+        when(instanceRepo.nextEvent(i.id)).thenThrow(new IllegalStateException("aborted"));
+
+        assertThrows(IllegalStateException.class,
+                () -> svc.publishTaskCreatedEvent(task(i.id), i, "USER_TASK", Map.of("a", 1)));
+        verifyNoInteractions(outbox);
+
+        doThrow(new IllegalStateException("outbox down")).when(outbox).append(any(), any(), any());
+        assertThrows(IllegalStateException.class, () -> svc.publishInstanceCreatedEvent(i, Map.of()));
+    }
+}
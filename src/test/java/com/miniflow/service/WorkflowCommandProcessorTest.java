@@ -0,0 +1,113 @@
+package com.miniflow.service;
+
+import com.miniflow.core.CommandRetry;
+import com.miniflow.core.DbBackedEngine;
+import com.miniflow.events.WorkflowCommand;
+import com.miniflow.events.WorkflowCommandType;
+import com.miniflow.persist.repo.WfCommandLogRepo;
+import com.miniflow.persist.repo.WfTaskRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class WorkflowCommandProcessorTest {
+
+    private final DbBackedEngine engine = mock(DbBackedEngine.class);
+    private final WfTaskRepo taskRepo = mock(WfTaskRepo.class);
+    private final WfCommandLogRepo commandLog = mock(WfCommandLogRepo.class);
+    private final CommandRetry retry = mock(CommandRetry.class);
+    private final WorkflowCommandProcessor processor = new WorkflowCommandProcessor(engine, taskRepo, commandLog, retry, 500);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        when(retry.inTransaction(anyString(), any())).thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(1)).get());
+        when(commandLog.claim(any())).thenAnswer(inv -> List.of((String[]) inv.getArgument(0)));
+        when(engine.deployedProcessIds()).thenReturn(Set.of("p", "q"));
+        when(engine.startAll(anyString(), any())).thenAnswer(inv -> {
+            Stream<DbBackedEngine.StartRequest> reqs = inv.getArgument(1);
+            return reqs.map(r -> new DbBackedEngine.StartResult(UUID.randomUUID(), r.businessKey(), false)).toList();
+        });
+    }
+
+    private static WorkflowCommand start(String id, String processId, String businessKey) {
+        return WorkflowCommand.newBuilder().setCommandId(id).setType(WorkflowCommandType.START_INSTANCE)
+                .setProcessId(processId).setBusinessKey(businessKey).build();
+    }
+
+    private static WorkflowCommand complete(String id, UUID taskId) {
+        return WorkflowCommand.newBuilder().setCommandId(id).setType(WorkflowCommandType.COMPLETE_TASK)
+                .setTaskId(taskId.toString()).setVariables(Map.of("approved", true)).build();
+    }
+
+    private static WorkflowCommand correlate(String id, String businessKey, String message) {
+        return WorkflowCommand.newBuilder().setCommandId(id).setType(WorkflowCommandType.CORRELATE_MESSAGE)
+                .setBusinessKey(businessKey).setMessageName(message).build();
+    }
+
+    private static List<String> statuses(List<WorkflowCommandProcessor.Outcome> out) {
+        return out.stream().map(WorkflowCommandProcessor.Outcome::status).toList();
+    }
+
+    @Test
+    public void testClaimedBeforeAreSkippedAndStartsBatchedPerProcess() {
+        doReturn(List.of("c1", "c3")).when(commandLog).claim(any());
+
+        var out = processor.process(List.of(start("c1", "p", "a"), start("c2", "p", "b"), start("c3", "p", "c"),
+                start("c4", "nope", "d")));
+
+        assertEquals(List.of("STARTED", "DUPLICATE", "STARTED", "DUPLICATE"), statuses(out));
+        verify(engine, times(1)).startAll(eq("p"), any());
+        ArgumentCaptor<String[]> ids = ArgumentCaptor.forClass(String[].class);
+        verify(commandLog).record(ids.capture(), any(), any(), any());
+        assertArrayEquals(new String[]{"c1", "c3"}, ids.getValue());
+    }
+
+    @Test
+    public void testCorrelationCompletesTheWaitingTaskOnce() {
+        UUID task = UUID.randomUUID();
+        UUID iid = UUID.randomUUID();
+        when(taskRepo.findOpenTaskIdByBusinessKey(null, "bk", "waitPayment")).thenReturn(List.of(task));
+        when(engine.completeUserTasks(anyList())).thenAnswer(inv -> {
+            List<DbBackedEngine.TaskCompletion> cs = inv.getArgument(0);
+            return cs.stream().map(c -> new DbBackedEngine.TaskCompletionResult(c.taskId(), iid, "COMPLETED", false, null)).toList();
+        });
+
+        var out = processor.process(List.of(complete("c1", task), correlate("c2", "bk", "waitPayment"),
+                correlate("c3", "other", "waitPayment"), start("c4", null, "x")));
+
+        assertEquals(List.of("COMPLETED", "NOT_OPEN", "NO_MATCH", "REJECTED"), statuses(out));
+        assertEquals(iid.toString(), out.get(0).result());
+        verify(engine, times(1)).completeUserTasks(argThat(l -> l.size() == 1 && l.get(0).updates().equals(Map.of("approved", true))));
+    }
+
+    @Test
+    public void testFailedBatchIsReplayedOneByOneAndTheCulpritLoggedAsFailed() {
+        doThrow(new IllegalStateException("boom")).when(engine).startAll(eq("q"), any());
+
+        var out = processor.process(List.of(start("c1", "p", "a"), start("c2", "q", "b")));
+
+        assertEquals(List.of("STARTED", "FAILED"), statuses(out));
+        assertEquals("boom", out.get(1).error());
+        verify(engine, times(2)).startAll(eq("p"), any()); // in the batch, then on its own
+        verify(commandLog).record(aryEq(new String[]{"c2"}), aryEq(new String[]{"FAILED"}), any(), any());
+    }
+
+    @Test
+    public void testDatabaseOutageIsRethrownForRedelivery() {
+        doThrow(new QueryTimeoutException("db down")).when(engine).startAll(eq("q"), any());
+
+        assertThrows(QueryTimeoutException.class,
+                () -> processor.process(List.of(start("c1", "p", "a"), start("c2", "q", "b"))));
+        verify(commandLog, never()).record(any(), aryEq(new String[]{"FAILED"}), any(), any());
+    }
+}
@@ -0,0 +1,150 @@
+package com.miniflow.service;
+
+import com.miniflow.avro.InstanceEvent;
+import com.miniflow.events.WorkflowStepEvent;
+import com.miniflow.persist.entity.WfReportTask;
+import com.miniflow.persist.repo.WfReportEventRepo;
+import com.miniflow.persist.repo.WfReportInstanceRepo;
+import com.miniflow.persist.repo.WfReportTaskCountRepo;
+import com.miniflow.persist.repo.WfReportTaskRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class WorkflowEventProjectorTest {
+
+    private final WfReportEventRepo eventRepo = mock(WfReportEventRepo.class);
+    private final WfReportInstanceRepo instanceRepo = mock(WfReportInstanceRepo.class);
+    private final WfReportTaskRepo taskRepo = mock(WfReportTaskRepo.class);
+    private final WfReportTaskCountRepo countRepo = mock(WfReportTaskCountRepo.class);
+    private final WorkflowEventProjector projector = new WorkflowEventProjector(eventRepo, instanceRepo, taskRepo,
+            countRepo, mock(PlatformTransactionManager.class), 168, 3_600_000);
+
+    private final String iid = UUID.randomUUID().toString();
+
+    @BeforeEach
+    public void setUp() {
+        when(eventRepo.claim(any())).thenAnswer(inv -> List.of((String[]) inv.getArgument(0)));
+    }
+
+    private InstanceEvent instance(String eventId, String type, String status, long seq, long ts) {
+        return new InstanceEvent(eventId, type, ts, iid, "p", "bk-1", status, Map.of(), seq, true, List.of());
+    }
+
+    private WorkflowStepEvent step(String eventId, String type, String taskId, String assignee, long ts) {
+        return new WorkflowStepEvent(eventId, type, ts, iid, "p", "bk-1", "review", "Review", "USER_TASK", taskId,
+                "TASK_COMPLETED".equals(type) ? "COMPLETED" : "OPEN", null, 0L, true, List.of(), assignee);
+    }
+
+    @Test
+    public void testInstanceEventsCollapseToTheLatestPerInstance() {
+        projector.project(List.of(
+                instance("e2", "INSTANCE_COMPLETED", "COMPLETED", 4, 2000),
+                instance("e1", "INSTANCE_CREATED", "RUNNING", 1, 1000)));
+
+        ArgumentCaptor<String[]> statuses = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> created = ArgumentCaptor.forClass(String[].class);
+        verify(instanceRepo).upsertAll(any(), any(), any(), statuses.capture(), any(), any(), created.capture(), any());
+        assertArrayEquals(new String[]{"COMPLETED"}, statuses.getValue());
+        assertArrayEquals(new String[]{"1000"}, created.getValue());
+    }
+
+    @Test
+    public void testSnapshotWinsByTimeWhenTheNumberingRestarted() {
+        InstanceEvent full = instance("e1", "INSTANCE_COMPLETED", "RUNNING", 90_000, 2000);
+        InstanceEvent delta = new InstanceEvent("e2", "INSTANCE_COMPLETED", 3000L, iid, "p", "bk-1", "COMPLETED",
+                Map.of(), 7L, false, List.of());
+        InstanceEvent snapshot = instance("e3", "INSTANCE_COMPLETED", "COMPLETED", 50, 3000);
+
+        assertFalse(WorkflowEventProjector.isNewer(delta, full));
+        assertTrue(WorkflowEventProjector.isNewer(snapshot, full));
+        assertFalse(WorkflowEventProjector.isNewer(full, snapshot));
+        assertFalse(WorkflowEventProjector.isNewer(instance("e0", "INSTANCE_CREATED", "RUNNING", 1, 1000), full));
+
+        projector.project(List.of(full, snapshot));
+        ArgumentCaptor<String[]> seqs = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> snapshots = ArgumentCaptor.forClass(String[].class);
+        verify(instanceRepo).upsertAll(any(), any(), any(), any(), seqs.capture(), snapshots.capture(), any(), any());
+        assertArrayEquals(new String[]{"50"}, seqs.getValue());
+        assertArrayEquals(new String[]{"true"}, snapshots.getValue());
+    }
+
+    @Test
+    public void testTaskMovesBetweenBucketsAndNetZeroDeltasAreDropped() {
+        String task = UUID.randomUUID().toString();
+
+        projector.project(List.of(
+                step("s1", "TASK_CREATED", task, null, 1000),
+                step("s2", "TASK_COMPLETED", task, "alice", 2000)));
+
+        ArgumentCaptor<String[]> assignees = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> open = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> completed = ArgumentCaptor.forClass(String[].class);
+        verify(countRepo).addAll(any(), any(), assignees.capture(), open.capture(), completed.capture());
+        assertArrayEquals(new String[]{"alice"}, assignees.getValue()); // '' went +1 -1
+        assertArrayEquals(new String[]{"0"}, open.getValue());
+        assertArrayEquals(new String[]{"1"}, completed.getValue());
+
+        ArgumentCaptor<String[]> states = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> createdMs = ArgumentCaptor.forClass(String[].class);
+        verify(taskRepo).upsertAll(any(), any(), any(), any(), any(), states.capture(), createdMs.capture(), any());
+        assertArrayEquals(new String[]{"COMPLETED"}, states.getValue());
+        assertArrayEquals(new String[]{"1000"}, createdMs.getValue());
+    }
+
+    @Test
+    public void testClaimAndUnclaimMoveAnOpenTaskBetweenAssignees() {
+        String task = UUID.randomUUID().toString();
+        WfReportTask open = new WfReportTask();
+        open.taskId = UUID.fromString(task);
+        open.processId = "p";
+        open.nodeId = "review";
+        open.assignee = "";
+        open.state = "OPEN";
+        when(taskRepo.findAllById(any())).thenReturn(List.of(open));
+
+        projector.project(List.of(step("s2", "TASK_CLAIMED", task, "bob", 2000)));
+
+        ArgumentCaptor<String[]> assignees = ArgumentCaptor.forClass(String[].class);
+        ArgumentCaptor<String[]> counts = ArgumentCaptor.forClass(String[].class);
+        verify(countRepo).addAll(any(), any(), assignees.capture(), counts.capture(), any());
+        assertArrayEquals(new String[]{"", "bob"}, assignees.getValue());
+        assertArrayEquals(new String[]{"-1", "1"}, counts.getValue());
+
+        open.assignee = "bob";
+        projector.project(List.of(step("s3", "TASK_UNCLAIMED", task, null, 3000)));
+
+        verify(countRepo, times(2)).addAll(any(), any(), assignees.capture(), counts.capture(), any());
+        assertArrayEquals(new String[]{"", "bob"}, assignees.getValue());
+        assertArrayEquals(new String[]{"1", "-1"}, counts.getValue());
+    }
+
+    @Test
+    public void testAlreadyProjectedEventsAndLateCreationsChangeNothing() {
+        String task = UUID.randomUUID().toString();
+        WfReportTask done = new WfReportTask();
+        done.taskId = UUID.fromString(task);
+        done.processId = "p";
+        done.nodeId = "review";
+        done.assignee = "alice";
+        done.state = "COMPLETED";
+        when(taskRepo.findAllById(any())).thenReturn(List.of(done));
+        doReturn(List.of("s9")).when(eventRepo).claim(any());
+
+        projector.project(List.of(
+                step("s1", "TASK_COMPLETED", task, "alice", 2000),   // seen before
+                step("s9", "TASK_CREATED", task, null, 1000)));      // arrives after the completion
+
+        verify(taskRepo, never()).upsertAll(any(), any(), any(), any(), any(), any(), any(), any());
+        verify(countRepo, never()).addAll(any(), any(), any(), any(), any());
+    }
+}